@@ -0,0 +1,494 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import waggle.common.modules.conversation.enums.XConversationRole;
+import waggle.common.modules.group.enums.XGroupOriginType;
+import waggle.common.modules.group.enums.XGroupType;
+import waggle.common.modules.group.infos.XGroupInfo;
+import waggle.common.modules.member.infos.XMemberInfo;
+import waggle.common.modules.search.infos.XContentServerSearchFilterInfo;
+import waggle.common.modules.search.infos.XSearchResultInfo;
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.server.accesscontrol.infos.XResourceInfo;
+import waggle.server.hybridlink.XHybridLinkPermissions;
+import waggle.server.integration.docs.structs.XGroupSyncStruct;
+import waggle.server.integration.docs.structs.XIdcArtifactInfoStruct;
+import waggle.server.modules.group.database.group.XGroupObject;
+import waggle.server.modules.member.database.member.XMemberObject;
+import waggle.server.modules.user.database.user.XUserObject;
+
+/**
+ * Asynchronous variants of the {@link XIdcUtils} services.
+ *
+ * Each call is run on the {@link XIdcExecutor} with the session of the calling user and returns a CompletableFuture,
+ * so callers can fan out, compose and put deadlines ({@link XIdcExecutor#withDeadline}) on Content Server work
+ * without blocking their own thread. Failures complete the future exceptionally with the same XRuntimeException the
+ * blocking service would have thrown.
+ *
+ * The streaming variants hand their results to the consumer on the IDC thread, as they arrive; the consumer must be
+ * thread safe if the caller reads what it collects before the future completes.
+ *
+ * The avatar and logo uploads have no asynchronous variant because their input stream belongs to the calling request.
+ */
+@XDisallowInstantiation
+public final class XIdcAsyncUtils
+{
+	private XIdcAsyncUtils()
+	{
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#deleteAvatar()}.
+	 *
+	 * @return Completes when the avatar has been deleted.
+	 */
+	public static CompletableFuture<Void> deleteAvatar()
+	{
+		return XIdcExecutor.submit( "IDC deleteAvatar", () -> { XIdcUtils.deleteAvatar(); return null; } );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#fetchHybridLink(String, String)}.
+	 *
+	 * @param contentServerGUID The Content Server folder GUID.
+	 * @param conversationID The conversation ID.
+	 * @return The hybrid link ID.
+	 */
+	public static CompletableFuture<String> fetchHybridLink( final String contentServerGUID, final String conversationID )
+	{
+		return XIdcExecutor.submit( "IDC fetchHybridLink", () -> XIdcUtils.fetchHybridLink( contentServerGUID, conversationID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#checkSitesAccess(String)}.
+	 *
+	 * @param sitesFolderGUID The sites folder GUID.
+	 * @return The access of the current user.
+	 */
+	public static CompletableFuture<XHybridLinkPermissions> checkSitesAccess( final String sitesFolderGUID )
+	{
+		return XIdcExecutor.submit( "IDC checkSitesAccess", () -> XIdcUtils.checkSitesAccess( sitesFolderGUID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#checkSitesAccess(String, XUserObject)}.
+	 *
+	 * @param sitesFolderGUID The sites folder GUID.
+	 * @param userObject The user to check, or null for the current user.
+	 * @return The access of the user.
+	 */
+	public static CompletableFuture<XHybridLinkPermissions> checkSitesAccess( final String sitesFolderGUID, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC checkSitesAccess", () -> XIdcUtils.checkSitesAccess( sitesFolderGUID, userObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#searchDocumentsAndFoldersInContentServer(XContentServerSearchFilterInfo, String, boolean)}.
+	 *
+	 * @param filterInfo Search criteria.
+	 * @param sortField The field to sort on, or null.
+	 * @param isSearchShared True to search shared items.
+	 * @return The matching results.
+	 */
+	public static CompletableFuture<List<XSearchResultInfo>> searchDocumentsAndFoldersInContentServer(
+		final XContentServerSearchFilterInfo 	filterInfo,
+		final String 							sortField,
+		final boolean 							isSearchShared )
+	{
+		return XIdcExecutor.submit( "IDC searchDocumentsAndFoldersInContentServer",
+									() -> XIdcUtils.searchDocumentsAndFoldersInContentServer( filterInfo, sortField, isSearchShared ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#searchDocumentsAndFoldersInContentServer(XContentServerSearchFilterInfo, String, boolean, Consumer)}.
+	 * The consumer is called on the IDC thread.
+	 *
+	 * @param filterInfo Search criteria.
+	 * @param sortField The field to sort on, or null.
+	 * @param isSearchShared True to search shared items.
+	 * @param consumer Receives the matching results in order.
+	 * @return The number of results handed to the consumer.
+	 */
+	public static CompletableFuture<Integer> searchDocumentsAndFoldersInContentServer(
+		final XContentServerSearchFilterInfo 	filterInfo,
+		final String 							sortField,
+		final boolean 							isSearchShared,
+		final Consumer<XSearchResultInfo> 		consumer )
+	{
+		return XIdcExecutor.submit( "IDC searchDocumentsAndFoldersInContentServer",
+									() -> XIdcUtils.searchDocumentsAndFoldersInContentServer( filterInfo, sortField, isSearchShared, consumer ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#createSite(String, String, String)}.
+	 *
+	 * @param siteName Name of site.
+	 * @param description Site description.
+	 * @param templateGUID The GUID of the site template.
+	 * @return The GUID of the new site.
+	 */
+	public static CompletableFuture<String> createSite( final String siteName, final String description, final String templateGUID )
+	{
+		return XIdcExecutor.submit( "IDC createSite", () -> XIdcUtils.createSite( siteName, description, templateGUID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#setSiteState(String, boolean)}.
+	 *
+	 * @param siteGUID The site GUID.
+	 * @param active True to activate the site, false to deactivate it.
+	 * @return Completes when the state has been set.
+	 */
+	public static CompletableFuture<Void> setSiteState( final String siteGUID, final boolean active )
+	{
+		return XIdcExecutor.submit( "IDC setSiteState", () -> { XIdcUtils.setSiteState( siteGUID, active ); return null; } );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getSiteGUID(String, boolean)}.
+	 *
+	 * @param siteName Name of site.
+	 * @param isTemplate True to look up a site template.
+	 * @return The site GUID, or null if there is no such site.
+	 */
+	public static CompletableFuture<String> getSiteGUID( final String siteName, final boolean isTemplate )
+	{
+		return XIdcExecutor.submit( "IDC getSiteGUID", () -> XIdcUtils.getSiteGUID( siteName, isTemplate ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getSitePartGUID(String)}.
+	 *
+	 * @param siteName Name of site.
+	 * @return The GUID of the site part.
+	 */
+	public static CompletableFuture<String> getSitePartGUID( final String siteName )
+	{
+		return XIdcExecutor.submit( "IDC getSitePartGUID", () -> XIdcUtils.getSitePartGUID( siteName ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#importOOTBSiteTemplates(String)}.
+	 *
+	 * @param templateName Name of the template.
+	 * @return The ID of the import job.
+	 */
+	public static CompletableFuture<String> importOOTBSiteTemplates( final String templateName )
+	{
+		return XIdcExecutor.submit( "IDC importOOTBSiteTemplates", () -> XIdcUtils.importOOTBSiteTemplates( templateName ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getBackgroundJobStatus(String)}.
+	 *
+	 * @param jobID The job ID.
+	 * @return The job status.
+	 */
+	public static CompletableFuture<String> getBackgroundJobStatus( final String jobID )
+	{
+		return XIdcExecutor.submit( "IDC getBackgroundJobStatus", () -> XIdcUtils.getBackgroundJobStatus( jobID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#deleteHiveLogo()}.
+	 *
+	 * @return Completes when the logo has been deleted.
+	 */
+	public static CompletableFuture<Void> deleteHiveLogo()
+	{
+		return XIdcExecutor.submit( "IDC deleteHiveLogo", () -> { XIdcUtils.deleteHiveLogo(); return null; } );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#updateHiveText(String)}.
+	 *
+	 * @param newText The new text.
+	 * @return Completes when the text has been updated.
+	 */
+	public static CompletableFuture<Void> updateHiveText( final String newText )
+	{
+		return XIdcExecutor.submit( "IDC updateHiveText", () -> { XIdcUtils.updateHiveText( newText ); return null; } );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#createGroup(XUserObject, XGroupObject)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> createGroup( final XUserObject userObject, final XGroupObject groupObject )
+	{
+		return XIdcExecutor.submit( "IDC createGroup", () -> XIdcUtils.createGroup( userObject, groupObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#viewGroupInfo(XUserObject, String)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupID The group ID.
+	 * @return The group info.
+	 */
+	public static CompletableFuture<XGroupInfo> viewGroupInfo( final XUserObject userObject, final String groupID )
+	{
+		return XIdcExecutor.submit( "IDC viewGroupInfo", () -> XIdcUtils.viewGroupInfo( userObject, groupID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#viewGroupInfo(XUserObject, XGroupObject)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @return The group info.
+	 */
+	public static CompletableFuture<XGroupInfo> viewGroupInfo( final XUserObject userObject, final XGroupObject groupObject )
+	{
+		return XIdcExecutor.submit( "IDC viewGroupInfo", () -> XIdcUtils.viewGroupInfo( userObject, groupObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#viewGroupMembers(XUserObject, XGroupObject)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @return The group members, or null if Content Server did not return them.
+	 */
+	public static CompletableFuture<List<XMemberInfo>> viewGroupMembers( final XUserObject userObject, final XGroupObject groupObject )
+	{
+		return XIdcExecutor.submit( "IDC viewGroupMembers", () -> XIdcUtils.viewGroupMembers( userObject, groupObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#viewGroupMembers(XUserObject, XGroupObject, Consumer)}. The consumer is called on
+	 * the IDC thread.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param chunkConsumer Receives the group members, a chunk at a time.
+	 * @return False if Content Server did not return the members.
+	 */
+	public static CompletableFuture<Boolean> viewGroupMembers( final XUserObject userObject, final XGroupObject groupObject, final Consumer<List<XMemberInfo>> chunkConsumer )
+	{
+		return XIdcExecutor.submit( "IDC viewGroupMembers", () -> XIdcUtils.viewGroupMembers( userObject, groupObject, chunkConsumer ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#deleteGroup(XUserObject, String)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupID The group ID.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> deleteGroup( final XUserObject userObject, final String groupID )
+	{
+		return XIdcExecutor.submit( "IDC deleteGroup", () -> XIdcUtils.deleteGroup( userObject, groupID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#deleteGroup(XUserObject, String, XGroupOriginType)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupID The group ID.
+	 * @param groupOriginType The origin of the group.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> deleteGroup( final XUserObject userObject, final String groupID, final XGroupOriginType groupOriginType )
+	{
+		return XIdcExecutor.submit( "IDC deleteGroup", () -> XIdcUtils.deleteGroup( userObject, groupID, groupOriginType ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#modifyGroup(XUserObject, XGroupObject, String, XGroupType)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param newGroupName The new group name.
+	 * @param newGroupType The new group type.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> modifyGroup( final XUserObject userObject, final XGroupObject groupObject, final String newGroupName, final XGroupType newGroupType )
+	{
+		return XIdcExecutor.submit( "IDC modifyGroup", () -> XIdcUtils.modifyGroup( userObject, groupObject, newGroupName, newGroupType ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#joinGroup(XUserObject, XGroupObject)}.
+	 *
+	 * @param userObject The joining user.
+	 * @param groupObject The group object.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> joinGroup( final XUserObject userObject, final XGroupObject groupObject )
+	{
+		return XIdcExecutor.submit( "IDC joinGroup", () -> XIdcUtils.joinGroup( userObject, groupObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#leaveGroup(XUserObject, XGroupObject)}.
+	 *
+	 * @param userObject The leaving user.
+	 * @param groupObject The group object.
+	 * @return The group sync result.
+	 */
+	public static CompletableFuture<XGroupSyncStruct> leaveGroup( final XUserObject userObject, final XGroupObject groupObject )
+	{
+		return XIdcExecutor.submit( "IDC leaveGroup", () -> XIdcUtils.leaveGroup( userObject, groupObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#addGroupMembers(XUserObject, XGroupObject, Map)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param memberObjects The members to add, with their roles.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> addGroupMembers( final XUserObject userObject, final XGroupObject groupObject, final Map<XMemberObject, XConversationRole> memberObjects )
+	{
+		return XIdcExecutor.submit( "IDC addGroupMembers", () -> XIdcUtils.addGroupMembers( userObject, groupObject, memberObjects ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#removeGroupMembers(XUserObject, XGroupObject, Set)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param memberObjects The members to remove.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> removeGroupMembers( final XUserObject userObject, final XGroupObject groupObject, final Set<XMemberObject> memberObjects )
+	{
+		return XIdcExecutor.submit( "IDC removeGroupMembers", () -> XIdcUtils.removeGroupMembers( userObject, groupObject, memberObjects ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#removeGroupMembersWithName(XUserObject, XGroupObject, Set)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param membersToRemoveFromDocs The login names of the users and the GS prefixed IDs of the groups to remove.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> removeGroupMembersWithName( final XUserObject userObject, final XGroupObject groupObject, final Set<String> membersToRemoveFromDocs )
+	{
+		return XIdcExecutor.submit( "IDC removeGroupMembersWithName", () -> XIdcUtils.removeGroupMembersWithName( userObject, groupObject, membersToRemoveFromDocs ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#grantGroupPrivilege(XUserObject, XGroupObject, Map)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param memberObjects The members, with the roles to grant.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> grantGroupPrivilege( final XUserObject userObject, final XGroupObject groupObject, final Map<XMemberObject, XConversationRole> memberObjects )
+	{
+		return XIdcExecutor.submit( "IDC grantGroupPrivilege", () -> XIdcUtils.grantGroupPrivilege( userObject, groupObject, memberObjects ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#modifyGroupPrivilege(XUserObject, XGroupObject, Map)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param memberObjects The members, with their new roles.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> modifyGroupPrivilege( final XUserObject userObject, final XGroupObject groupObject, final Map<XMemberObject, XConversationRole> memberObjects )
+	{
+		return XIdcExecutor.submit( "IDC modifyGroupPrivilege", () -> XIdcUtils.modifyGroupPrivilege( userObject, groupObject, memberObjects ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#revokeGroupPrivilege(XUserObject, XGroupObject, Set)}.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param memberObjects The members whose privileges are revoked.
+	 * @return The group sync results.
+	 */
+	public static CompletableFuture<List<XGroupSyncStruct>> revokeGroupPrivilege( final XUserObject userObject, final XGroupObject groupObject, final Set<XMemberObject> memberObjects )
+	{
+		return XIdcExecutor.submit( "IDC revokeGroupPrivilege", () -> XIdcUtils.revokeGroupPrivilege( userObject, groupObject, memberObjects ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getContentFileVersion(String)}.
+	 *
+	 * @param contentServerGUID The file GUID.
+	 * @return The latest revision ID of the file.
+	 */
+	public static CompletableFuture<String> getContentFileVersion( final String contentServerGUID )
+	{
+		return XIdcExecutor.submit( "IDC getContentFileVersion", () -> XIdcUtils.getContentFileVersion( contentServerGUID ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getUsersFromRepository(String, XUserObject)}.
+	 *
+	 * @param repositoryID The repository ID.
+	 * @param userObject The user to impersonate.
+	 * @return The login names of the users with access.
+	 */
+	public static CompletableFuture<Set<String>> getUsersFromRepository( final String repositoryID, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC getUsersFromRepository", () -> XIdcUtils.getUsersFromRepository( repositoryID, userObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getUsersFromFolder(String, XUserObject)}.
+	 *
+	 * @param folderID The folder ID.
+	 * @param userObject The user to impersonate.
+	 * @return The login names of the users with access.
+	 */
+	public static CompletableFuture<Set<String>> getUsersFromFolder( final String folderID, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC getUsersFromFolder", () -> XIdcUtils.getUsersFromFolder( folderID, userObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getFolderInfo(String, XUserObject)}.
+	 *
+	 * @param artifactID The folder GUID.
+	 * @param userObject The user to impersonate.
+	 * @return The role of the user on the folder.
+	 */
+	public static CompletableFuture<XResourceInfo> getFolderInfo( final String artifactID, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC getFolderInfo", () -> XIdcUtils.getFolderInfo( artifactID, userObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#getFileInfo(String, XUserObject)}.
+	 *
+	 * @param artifactID The file GUID.
+	 * @param userObject The user to impersonate.
+	 * @return The role of the user on the file.
+	 */
+	public static CompletableFuture<XResourceInfo> getFileInfo( final String artifactID, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC getFileInfo", () -> XIdcUtils.getFileInfo( artifactID, userObject ) );
+	}
+
+	/**
+	 * Asynchronous {@link XIdcUtils#resolveArtifacts(Collection, XUserObject)}.
+	 *
+	 * @param artifactIDs The file and folder GUIDs.
+	 * @param userObject The user to impersonate.
+	 * @return The info of each artifact, keyed by the ID as given.
+	 */
+	public static CompletableFuture<Map<String, XIdcArtifactInfoStruct>> resolveArtifacts( final Collection<String> artifactIDs, final XUserObject userObject )
+	{
+		return XIdcExecutor.submit( "IDC resolveArtifacts", () -> XIdcUtils.resolveArtifacts( artifactIDs, userObject ) );
+	}
+}
@@ -0,0 +1,277 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import waggle.core.properties.XPropertiesManager;
+import waggle.server.integration.docs.structs.XIdcCacheStatsStruct;
+
+/**
+ * Bounded in-memory cache for Content Server lookups, with time based expiry and explicit invalidation.
+ *
+ * Entries are evicted least recently used first once the cache is full, and expire after their time to live.
+ * Null values can be cached (for example "not found" answers) with their own, usually shorter, time to live.
+ * A value loaded while an invalidation happened is not cached (see {@link #getStamp()}), so a slow load cannot put
+ * back a stale value.
+ * The maximum size and the time to live are read from waggle.server.docsintegration.cache.&lt;name&gt;.max.size and
+ * .ttl.ms, so they can be tuned without a restart.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+final class XIdcCache<K, V>
+{
+	private static final 	String 	PROPERTY_PREFIX = "waggle.server.docsintegration.cache.";
+
+	private static final 	List<XIdcCache<?, ?>>	sCaches = new CopyOnWriteArrayList<>();
+
+	private final String				fName;
+	private final int					fDefaultMaxSize;
+	private final long					fDefaultTTL;
+	private final LinkedHashMap<K, Entry<V>>	fEntries = new LinkedHashMap<>( 16, 0.75f, true );
+	private final AtomicLong			fHits = new AtomicLong();
+	private final AtomicLong			fMisses = new AtomicLong();
+	private final AtomicLong			fEvictions = new AtomicLong();
+	private final AtomicLong			fExpirations = new AtomicLong();
+	private final AtomicLong			fInvalidations = new AtomicLong();
+	private long						fStamp;
+
+	/**
+	 * Creates a cache and registers it for the cache statistics.
+	 *
+	 * @param name The cache name, used in the property names and statistics.
+	 * @param defaultMaxSize The maximum number of entries, unless configured.
+	 * @param defaultTTL The time to live of an entry in milliseconds, unless configured.
+	 */
+	XIdcCache( String name, int defaultMaxSize, long defaultTTL )
+	{
+		fName = name;
+		fDefaultMaxSize = defaultMaxSize;
+		fDefaultTTL = defaultTTL;
+
+		sCaches.add( this );
+	}
+
+	/**
+	 * Get the statistics of every cache.
+	 *
+	 * @return The statistics.
+	 */
+	static List<XIdcCacheStatsStruct> getAllStatistics()
+	{
+		List<XIdcCacheStatsStruct>	retval = new ArrayList<>();
+
+		for ( XIdcCache<?, ?> cache : sCaches )
+		{
+			retval.add( cache.getStatistics() );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Looks up an entry.
+	 *
+	 * @param key The key.
+	 * @return The entry, or null on a miss. The value of the entry may itself be null.
+	 */
+	synchronized Entry<V> get( K key )
+	{
+		Entry<V>	entry = fEntries.get( key );
+
+		if ( ( entry != null ) && entry.isExpired() )
+		{
+			fEntries.remove( key );
+			fExpirations.incrementAndGet();
+
+			entry = null;
+		}
+
+		if ( entry == null )
+		{
+			fMisses.incrementAndGet();
+		}
+		else
+		{
+			fHits.incrementAndGet();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Get the invalidation stamp. Take it before loading a value and pass it to put; the value is then only cached
+	 * if nothing was invalidated in the meantime.
+	 *
+	 * @return The stamp.
+	 */
+	synchronized long getStamp()
+	{
+		return fStamp;
+	}
+
+	/**
+	 * Puts an entry with the configured time to live.
+	 *
+	 * @param key The key.
+	 * @param value The value, may be null.
+	 * @param stamp The stamp taken before the value was loaded.
+	 */
+	void put( K key, V value, long stamp )
+	{
+		put( key, value, stamp, getTTL() );
+	}
+
+	/**
+	 * Puts an entry with the given time to live.
+	 *
+	 * @param key The key.
+	 * @param value The value, may be null.
+	 * @param stamp The stamp taken before the value was loaded.
+	 * @param ttl The time to live in milliseconds.
+	 */
+	synchronized void put( K key, V value, long stamp, long ttl )
+	{
+		if ( ( ttl <= 0 ) || ( stamp != fStamp ) )
+		{
+			return;
+		}
+
+		fEntries.put( key, new Entry<>( value, System.currentTimeMillis() + ttl ) );
+
+		int			maxSize = getMaxSize();
+
+		if ( fEntries.size() > maxSize )
+		{
+			Iterator<Map.Entry<K, Entry<V>>>	iterator = fEntries.entrySet().iterator();
+
+			while ( ( fEntries.size() > maxSize ) && iterator.hasNext() )
+			{
+				iterator.next();
+				iterator.remove();
+
+				fEvictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @param key The key.
+	 */
+	synchronized void invalidate( K key )
+	{
+		fStamp++;
+
+		if ( fEntries.remove( key ) != null )
+		{
+			fInvalidations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes every entry whose key matches.
+	 *
+	 * @param matcher Decides which keys to remove.
+	 */
+	synchronized void invalidateIf( Matcher<K> matcher )
+	{
+		fStamp++;
+
+		Iterator<K>		iterator = fEntries.keySet().iterator();
+
+		while ( iterator.hasNext() )
+		{
+			if ( matcher.matches( iterator.next() ) )
+			{
+				iterator.remove();
+
+				fInvalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	synchronized void invalidateAll()
+	{
+		fStamp++;
+
+		fInvalidations.addAndGet( fEntries.size() );
+
+		fEntries.clear();
+	}
+
+	/**
+	 * Get the configured time to live of an entry.
+	 *
+	 * @return The time to live in milliseconds.
+	 */
+	long getTTL()
+	{
+		return XPropertiesManager.getInstance().getLong( PROPERTY_PREFIX + fName + ".ttl.ms", fDefaultTTL );
+	}
+
+	synchronized XIdcCacheStatsStruct getStatistics()
+	{
+		return new XIdcCacheStatsStruct( fName,
+										 fEntries.size(),
+										 getMaxSize(),
+										 fHits.get(),
+										 fMisses.get(),
+										 fEvictions.get(),
+										 fExpirations.get(),
+										 fInvalidations.get() );
+	}
+
+	private int getMaxSize()
+	{
+		return Math.max( 1, XPropertiesManager.getInstance().getInt( PROPERTY_PREFIX + fName + ".max.size", fDefaultMaxSize ) );
+	}
+
+	/**
+	 * Selects keys to invalidate.
+	 *
+	 * @param <K> The key type.
+	 */
+	interface Matcher<K>
+	{
+		boolean matches( K key );
+	}
+
+	/**
+	 * A cached value.
+	 *
+	 * @param <V> The value type.
+	 */
+	static final class Entry<V>
+	{
+		private final V			fValue;
+		private final long		fExpiryTime;
+
+		private Entry( V value, long expiryTime )
+		{
+			fValue = value;
+			fExpiryTime = expiryTime;
+		}
+
+		V getValue()
+		{
+			return fValue;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() >= fExpiryTime;
+		}
+	}
+}
@@ -0,0 +1,430 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+
+/**
+ * Per-service circuit breaker and bulkhead for the IDC requests sent to Content Server.
+ *
+ * The breaker keeps the outcome of the last calls of each IdcService in a sliding window. When the failure rate or
+ * the slow call rate of the window reaches its threshold, the circuit opens and calls fail fast instead of waiting
+ * for the socket timeout. A call is slow once it takes waggle.server.docsintegration.breaker.slow.call.percent of the
+ * socket timeout of its service (see XIdcTimeoutPolicy). After the open duration a few probe calls are let through (half open); if they succeed
+ * the circuit closes again, otherwise it re-opens.
+ *
+ * The bulkhead limits how many calls of one service may be in flight at once, so a slow service cannot take all
+ * the connections and threads from the others. It admits as many calls as the IDC executor runs at once, unless
+ * configured otherwise; calls beyond that wait briefly for a slot (waggle.server.docsintegration.bulkhead.wait.ms)
+ * and then fail fast. A call gives its slot back while it backs off between retries.
+ */
+@XDisallowInstantiation
+final class XIdcCircuitBreaker
+{
+	private static final 	String 	ENABLED_PROPERTY = "waggle.server.docsintegration.breaker.enabled";
+	private static final 	String 	WINDOW_SIZE_PROPERTY = "waggle.server.docsintegration.breaker.window.size";
+	private static final 	String 	MINIMUM_CALLS_PROPERTY = "waggle.server.docsintegration.breaker.minimum.calls";
+	private static final 	String 	FAILURE_RATE_PROPERTY = "waggle.server.docsintegration.breaker.failure.rate.percent";
+	private static final 	String 	SLOW_CALL_RATE_PROPERTY = "waggle.server.docsintegration.breaker.slow.call.rate.percent";
+	private static final 	String 	SLOW_CALL_PERCENT_PROPERTY = "waggle.server.docsintegration.breaker.slow.call.percent";
+	private static final 	String 	OPEN_DURATION_PROPERTY = "waggle.server.docsintegration.breaker.open.duration.ms";
+	private static final 	String 	HALF_OPEN_CALLS_PROPERTY = "waggle.server.docsintegration.breaker.half.open.calls";
+	private static final 	String 	BULKHEAD_MAX_CALLS_PROPERTY = "waggle.server.docsintegration.bulkhead.max.concurrent.calls";
+	private static final 	String 	BULKHEAD_WAIT_PROPERTY = "waggle.server.docsintegration.bulkhead.wait.ms";
+
+	private static final 	int 	DEFAULT_WINDOW_SIZE = 50;
+	private static final 	int 	DEFAULT_MINIMUM_CALLS = 10;
+	private static final 	int 	DEFAULT_FAILURE_RATE = 50;
+	private static final 	int 	DEFAULT_SLOW_CALL_RATE = 80;
+	private static final 	int 	DEFAULT_SLOW_CALL_PERCENT = 50;
+	private static final 	long 	DEFAULT_OPEN_DURATION = 30000L;
+	private static final 	int 	DEFAULT_HALF_OPEN_CALLS = 3;
+	private static final 	long 	DEFAULT_BULKHEAD_WAIT = 100L;
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static final 	ConcurrentMap<String, Breaker>		sBreakers = new ConcurrentHashMap<>();
+	private static final 	ConcurrentMap<String, Semaphore>	sBulkheads = new ConcurrentHashMap<>();
+
+	private static volatile int		sBulkheadMaxCalls;
+
+	private XIdcCircuitBreaker()
+	{
+	}
+
+	/**
+	 * The state of a circuit.
+	 */
+	enum State
+	{
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	/**
+	 * Asks permission to call a service.
+	 *
+	 * @param serviceName The IdcService.
+	 * @return The permit, or null if the circuit is open or the bulkhead is full. The permit must be completed
+	 * 		   once the call has finished.
+	 */
+	static Permit acquire( String serviceName )
+	{
+		if ( !XPropertiesManager.getInstance().getBoolean( ENABLED_PROPERTY, true ) )
+		{
+			return Permit.UNGUARDED;
+		}
+
+		Breaker		breaker = getBreaker( serviceName );
+
+		if ( !breaker.tryAcquire() )
+		{
+			sLogger.warning( "Circuit for IDC Service - {0} is open. Failing fast.", breaker.fServiceName );
+
+			return null;
+		}
+
+		Semaphore	bulkhead = getBulkhead( breaker.fServiceName );
+
+		if ( !acquireSlot( bulkhead ) )
+		{
+			breaker.cancel();
+
+			sLogger.warning( "Timed out waiting for a bulkhead slot for IDC Service - {0}. Rejecting call.", breaker.fServiceName );
+
+			return null;
+		}
+
+		return new Permit( breaker, bulkhead );
+	}
+
+	/**
+	 * Get the state of every circuit seen so far, for monitoring.
+	 *
+	 * @return The circuit states by service name.
+	 */
+	static Map<String, State> getStates()
+	{
+		Map<String, State>	retval = new TreeMap<>();
+
+		for ( Map.Entry<String, Breaker> entry : sBreakers.entrySet() )
+		{
+			retval.put( entry.getKey(), entry.getValue().getState() );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Waits briefly for a bulkhead slot, so a saturated service fails fast rather than queueing its callers.
+	 */
+	private static boolean acquireSlot( Semaphore bulkhead )
+	{
+		try
+		{
+			return bulkhead.tryAcquire( XPropertiesManager.getInstance().getLong( BULKHEAD_WAIT_PROPERTY, DEFAULT_BULKHEAD_WAIT ), TimeUnit.MILLISECONDS );
+		}
+		catch ( InterruptedException ex )
+		{
+			Thread.currentThread().interrupt();
+
+			return false;
+		}
+	}
+
+	private static Breaker getBreaker( String serviceName )
+	{
+		String		key = XString.isBlank( serviceName ) ? "UNKNOWN" : serviceName;
+		Breaker		breaker = sBreakers.get( key );
+
+		if ( breaker == null )
+		{
+			sBreakers.putIfAbsent( key, new Breaker( key ) );
+			breaker = sBreakers.get( key );
+		}
+
+		return breaker;
+	}
+
+	private static Semaphore getBulkhead( String serviceName )
+	{
+		int			maxCalls = Math.max( 1, XPropertiesManager.getInstance().getInt( BULKHEAD_MAX_CALLS_PROPERTY, XIdcExecutor.getMaxConcurrency() ) );
+
+		if ( maxCalls != sBulkheadMaxCalls )
+		{
+			// Permits held against the previous semaphores are released back to them.
+
+			sBulkheads.clear();
+			sBulkheadMaxCalls = maxCalls;
+		}
+
+		Semaphore	bulkhead = sBulkheads.get( serviceName );
+
+		if ( bulkhead == null )
+		{
+			sBulkheads.putIfAbsent( serviceName, new Semaphore( maxCalls, true ) );
+			bulkhead = sBulkheads.get( serviceName );
+		}
+
+		return bulkhead;
+	}
+
+	private static int getInt( String property, int defaultValue )
+	{
+		return Math.max( 1, XPropertiesManager.getInstance().getInt( property, defaultValue ) );
+	}
+
+	/**
+	 * Permission to make one call. Completing it records the outcome and frees the bulkhead slot.
+	 */
+	static final class Permit
+	{
+		private static final	Permit		UNGUARDED = new Permit( null, null );
+
+		private final Breaker		fBreaker;
+		private final Semaphore		fBulkhead;
+		private final long			fStartTime = System.currentTimeMillis();
+		private boolean				fCompleted;
+		private boolean				fHoldsSlot = true;
+		private long				fSuspendedTime;
+		private long				fSuspendTime;
+
+		private Permit( Breaker breaker, Semaphore bulkhead )
+		{
+			fBreaker = breaker;
+			fBulkhead = bulkhead;
+		}
+
+		/**
+		 * Gives the bulkhead slot back while the call is not using it, for example while it backs off before a retry.
+		 */
+		void suspend()
+		{
+			if ( ( fBreaker == null ) || fCompleted || !fHoldsSlot )
+			{
+				return;
+			}
+
+			fHoldsSlot = false;
+			fSuspendTime = System.currentTimeMillis();
+
+			fBulkhead.release();
+		}
+
+		/**
+		 * Takes a bulkhead slot again after {@link #suspend()}, waiting no longer than a new call would.
+		 *
+		 * @return False if the bulkhead is full; the call must then give up.
+		 */
+		boolean resume()
+		{
+			if ( ( fBreaker == null ) || fCompleted || fHoldsSlot )
+			{
+				return true;
+			}
+
+			fHoldsSlot = acquireSlot( fBulkhead );
+			fSuspendedTime += System.currentTimeMillis() - fSuspendTime;
+
+			return fHoldsSlot;
+		}
+
+		/**
+		 * Records the outcome of the call. The time it was suspended does not count towards its duration.
+		 *
+		 * @param success False if the call failed because Content Server is unhealthy (transport failure, timeout).
+		 */
+		void complete( boolean success )
+		{
+			if ( fCompleted || ( fBreaker == null ) )
+			{
+				return;
+			}
+
+			fCompleted = true;
+
+			if ( fHoldsSlot )
+			{
+				fBulkhead.release();
+			}
+
+			fBreaker.record( success, System.currentTimeMillis() - fStartTime - fSuspendedTime );
+		}
+	}
+
+	private static final class Breaker
+	{
+		private final String		fServiceName;
+		private boolean[]			fFailures = new boolean[ 0 ];
+		private boolean[]			fSlowCalls = new boolean[ 0 ];
+		private int					fIndex;
+		private int					fCalls;
+		private int					fFailureCount;
+		private int					fSlowCallCount;
+		private State				fState = State.CLOSED;
+		private long				fOpenedTime;
+		private int					fHalfOpenPermits;
+		private int					fHalfOpenSuccesses;
+
+		private Breaker( String serviceName )
+		{
+			fServiceName = serviceName;
+		}
+
+		private synchronized State getState()
+		{
+			return fState;
+		}
+
+		private synchronized boolean tryAcquire()
+		{
+			if ( ( fState == State.OPEN ) &&
+				 ( ( System.currentTimeMillis() - fOpenedTime ) >= XPropertiesManager.getInstance().getLong( OPEN_DURATION_PROPERTY, DEFAULT_OPEN_DURATION ) ) )
+			{
+				transitionTo( State.HALF_OPEN );
+			}
+
+			if ( fState == State.OPEN )
+			{
+				return false;
+			}
+
+			if ( fState == State.HALF_OPEN )
+			{
+				if ( fHalfOpenPermits <= 0 )
+				{
+					return false;
+				}
+
+				fHalfOpenPermits--;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Gives back a half open probe permit that was not used.
+		 */
+		private synchronized void cancel()
+		{
+			if ( fState == State.HALF_OPEN )
+			{
+				fHalfOpenPermits++;
+			}
+		}
+
+		private synchronized void record( boolean success, long duration )
+		{
+			boolean		slow = duration >= getSlowCallDuration();
+
+			if ( fState == State.HALF_OPEN )
+			{
+				if ( !success || slow )
+				{
+					transitionTo( State.OPEN );
+				}
+				else if ( ++fHalfOpenSuccesses >= getInt( HALF_OPEN_CALLS_PROPERTY, DEFAULT_HALF_OPEN_CALLS ) )
+				{
+					transitionTo( State.CLOSED );
+				}
+
+				return;
+			}
+
+			if ( fState == State.OPEN )
+			{
+				// A call that was let through before the circuit opened.
+
+				return;
+			}
+
+			int			windowSize = getInt( WINDOW_SIZE_PROPERTY, DEFAULT_WINDOW_SIZE );
+
+			if ( fFailures.length != windowSize )
+			{
+				resetWindow( windowSize );
+			}
+
+			if ( fCalls == windowSize )
+			{
+				fFailureCount -= fFailures[ fIndex ] ? 1 : 0;
+				fSlowCallCount -= fSlowCalls[ fIndex ] ? 1 : 0;
+			}
+			else
+			{
+				fCalls++;
+			}
+
+			fFailures[ fIndex ] = !success;
+			fSlowCalls[ fIndex ] = slow;
+			fFailureCount += success ? 0 : 1;
+			fSlowCallCount += slow ? 1 : 0;
+			fIndex = ( fIndex + 1 ) % windowSize;
+
+			if ( fCalls >= Math.min( windowSize, getInt( MINIMUM_CALLS_PROPERTY, DEFAULT_MINIMUM_CALLS ) ) )
+			{
+				int		failureRate = ( fFailureCount * 100 ) / fCalls;
+				int		slowCallRate = ( fSlowCallCount * 100 ) / fCalls;
+
+				if ( ( failureRate >= getInt( FAILURE_RATE_PROPERTY, DEFAULT_FAILURE_RATE ) ) ||
+					 ( slowCallRate >= getInt( SLOW_CALL_RATE_PROPERTY, DEFAULT_SLOW_CALL_RATE ) ) )
+				{
+					sLogger.warning( "IDC Service - {0} is unhealthy. Failure rate: {1}%, slow call rate: {2}% over the last {3} calls.",
+									 fServiceName, failureRate, slowCallRate, fCalls );
+
+					transitionTo( State.OPEN );
+				}
+			}
+		}
+
+		/**
+		 * @return The duration from which a call of the service counts as slow, a share of its socket timeout.
+		 */
+		private long getSlowCallDuration()
+		{
+			return ( XIdcTimeoutPolicy.getTimeout( fServiceName ) * (long) getInt( SLOW_CALL_PERCENT_PROPERTY, DEFAULT_SLOW_CALL_PERCENT ) ) / 100L;
+		}
+
+		private void transitionTo( State state )
+		{
+			sLogger.info( "Circuit for IDC Service - {0} changed from {1} to {2}.", fServiceName, fState, state );
+
+			fState = state;
+
+			if ( state == State.OPEN )
+			{
+				fOpenedTime = System.currentTimeMillis();
+			}
+			else if ( state == State.HALF_OPEN )
+			{
+				fHalfOpenPermits = getInt( HALF_OPEN_CALLS_PROPERTY, DEFAULT_HALF_OPEN_CALLS );
+				fHalfOpenSuccesses = 0;
+			}
+			else
+			{
+				resetWindow( fFailures.length );
+			}
+		}
+
+		private void resetWindow( int windowSize )
+		{
+			fFailures = new boolean[ windowSize ];
+			fSlowCalls = new boolean[ windowSize ];
+			fIndex = 0;
+			fCalls = 0;
+			fFailureCount = 0;
+			fSlowCallCount = 0;
+		}
+	}
+}
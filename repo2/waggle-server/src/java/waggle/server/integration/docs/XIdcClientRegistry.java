@@ -0,0 +1,419 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import oracle.stellent.ridc.IdcClient;
+import oracle.stellent.ridc.IdcClientConfig;
+import oracle.stellent.ridc.IdcClientException;
+import oracle.stellent.ridc.IdcClientManager;
+import oracle.stellent.ridc.common.http.utils.RIDCHttpConstants.HttpLibrary;
+import oracle.stellent.ridc.protocol.http.IdcHttpClientConfig;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.exceptions.XRuntimeException;
+import waggle.core.http.XHTTPProxy;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XContentServerUtil;
+import waggle.core.utils.XString;
+
+/**
+ * Registry of long-lived IDC clients used for invoking services in Content Server.
+ *
+ * A client is built once for the current Content Server URL and proxy configuration and is shared by all callers.
+ * The configuration is re-checked periodically and the client is rebuilt only when it has changed.
+ *
+ * RIDC applies the socket timeout per client, so there is a client for each timeout of XIdcTimeoutPolicy#getClientTimeouts,
+ * built from the same configuration. The connections of the pool (see XIdcConnectionPool) are split between them, so
+ * all clients together stay within the configured total. A request is sent with the client of the shortest timeout
+ * that is not shorter than its own. A timeout without a client, for example one configured for a service that had not
+ * been called yet, makes the clients be rebuilt with it.
+ *
+ * A discarded client is closed once the requests it may still be serving have timed out, so its connections are not
+ * left open. When the application stops all clients are closed at once (see XIdcShutdownListener).
+ */
+@XDisallowInstantiation
+public final class XIdcClientRegistry
+{
+	private static final 	String 	USE_PROXY_PROPERTY = "waggle.server.docsintegration.use.proxy";
+	private static final 	String 	RECHECK_INTERVAL_PROPERTY = "waggle.server.docsintegration.client.recheck.interval.ms";
+	private static final 	long 	DEFAULT_RECHECK_INTERVAL = 30000L;
+	private static final 	int 	DEFAULT_SOCKET_TIMEOUT = 300000;
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static final 	Object 	sLock = new Object();
+
+	private static volatile ClientHolder	sClientHolder;
+
+	private static final 	Set<ClientHolder>	sClosingHolders = ConcurrentHashMap.newKeySet();
+
+	private XIdcClientRegistry()
+	{
+	}
+
+	/**
+	 * Get the shared IDC client for the current Content Server configuration.
+	 *
+	 * @return The IdcClient object.
+	 *
+	 * @throws IdcClientException Exception during client creation.
+	 */
+	static IdcClient getClient() throws IdcClientException
+	{
+		return getClient( DEFAULT_SOCKET_TIMEOUT );
+	}
+
+	/**
+	 * Get the shared IDC client for the current Content Server configuration with the given socket timeout.
+	 *
+	 * @param socketTimeout The socket timeout in milliseconds.
+	 * @return The IdcClient object. Its socket timeout is the one given if it is one of the client timeouts (see
+	 *         XIdcTimeoutPolicy#getClientTimeouts); otherwise the shortest client timeout not shorter than the one given,
+	 *         or the longest client timeout.
+	 *
+	 * @throws IdcClientException Exception during client creation.
+	 */
+	static IdcClient getClient( int socketTimeout ) throws IdcClientException
+	{
+		ClientHolder 	holder = getHolder( false );
+
+		if ( !holder.fClientTimeouts.contains( socketTimeout ) && ( holder.fServiceCount != XIdcTimeoutPolicy.getServiceCount() ) )
+		{
+			// services were seen since the clients were built, their timeouts may need clients of their own
+
+			holder = getHolder( true );
+		}
+
+		Integer			clientTimeout = holder.fClientTimeouts.ceiling( socketTimeout );
+
+		if ( clientTimeout == null )
+		{
+			clientTimeout = holder.fClientTimeouts.last();
+		}
+
+		if ( ( clientTimeout != socketTimeout ) && sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "No IDC client with socket timeout {0} ms. Using the client with {1} ms.", socketTimeout, clientTimeout );
+		}
+
+		IdcClient		client = holder.fClients.get( clientTimeout );
+
+		if ( client == null )
+		{
+			synchronized ( sLock )
+			{
+				client = holder.fClients.get( clientTimeout );
+
+				if ( client == null )
+				{
+					client = createClient( clientTimeout, holder.fClientTimeouts.size() );
+					holder.fClients.put( clientTimeout, client );
+
+					if ( sLogger.isDebugEnabled() )
+					{
+						sLogger.debug( "Created IDC client with socket timeout {0} ms.", clientTimeout );
+					}
+				}
+			}
+		}
+
+		return client;
+	}
+
+	/**
+	 * Get the number of IDC clients the pooled connections are split between.
+	 *
+	 * @return The number of clients.
+	 */
+	static int getClientCount()
+	{
+		ClientHolder 	holder = sClientHolder;
+
+		return ( holder != null ) ? holder.fClientTimeouts.size() : XIdcTimeoutPolicy.getClientTimeouts().size();
+	}
+
+	private static ClientHolder getHolder( boolean recheck ) throws IdcClientException
+	{
+		ClientHolder 	holder = sClientHolder;
+		long 			now = System.currentTimeMillis();
+
+		if ( !recheck && ( holder != null ) && ( ( now - holder.fCheckedTime ) < getRecheckInterval() ) )
+		{
+			return holder;
+		}
+
+		SortedSet<Integer>	clientTimeouts = XIdcTimeoutPolicy.getClientTimeouts();
+		String 				configurationKey = getConfigurationKey( clientTimeouts );
+
+		synchronized ( sLock )
+		{
+			holder = sClientHolder;
+
+			if ( ( holder == null ) || ( !holder.fConfigurationKey.equals( configurationKey ) ) )
+			{
+				if ( holder != null )
+				{
+					sLogger.info( "Content Server client configuration changed. Rebuilding IDC client." );
+
+					closeLater( holder );
+				}
+
+				holder = new ClientHolder( configurationKey, clientTimeouts, new ConcurrentHashMap<Integer, IdcClient>() );
+			}
+			else
+			{
+				holder = new ClientHolder( holder.fConfigurationKey, holder.fClientTimeouts, holder.fClients );
+			}
+
+			sClientHolder = holder;
+		}
+
+		return holder;
+	}
+
+	/**
+	 * Get the socket timeout of the default client, used for services without a shorter timeout.
+	 *
+	 * @return The timeout in milliseconds.
+	 */
+	static int getDefaultSocketTimeout()
+	{
+		return DEFAULT_SOCKET_TIMEOUT;
+	}
+
+	/**
+	 * Discards the shared IDC clients. The next request will build new clients from the current configuration.
+	 */
+	public static void invalidate()
+	{
+		ClientHolder	holder;
+
+		synchronized ( sLock )
+		{
+			holder = sClientHolder;
+			sClientHolder = null;
+		}
+
+		if ( holder != null )
+		{
+			closeLater( holder );
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Discarded shared IDC client." );
+		}
+	}
+
+	/**
+	 * Closes the clients of a discarded holder once every request that may still be using them has timed out.
+	 */
+	private static void closeLater( final ClientHolder holder )
+	{
+		sClosingHolders.add( holder );
+
+		XIdcExecutor.schedule( () -> closeDiscarded( holder ), holder.fClientTimeouts.last(), TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Closes the shared IDC clients and the discarded ones that are still waiting to be closed. Called when the
+	 * application stops, before the executor that would have closed them later is shut down.
+	 */
+	static void shutdown()
+	{
+		ClientHolder	holder;
+
+		synchronized ( sLock )
+		{
+			holder = sClientHolder;
+			sClientHolder = null;
+		}
+
+		if ( holder != null )
+		{
+			closeClients( holder );
+		}
+
+		for ( ClientHolder closingHolder : sClosingHolders )
+		{
+			closeDiscarded( closingHolder );
+		}
+	}
+
+	private static void closeDiscarded( ClientHolder holder )
+	{
+		// closed by whichever of the timer and shutdown gets here first
+
+		if ( sClosingHolders.remove( holder ) )
+		{
+			closeClients( holder );
+		}
+	}
+
+	private static void closeClients( ClientHolder holder )
+	{
+		for ( IdcClient client : holder.fClients.values() )
+		{
+			closeClient( client );
+		}
+	}
+
+	private static void closeClient( IdcClient client )
+	{
+		try
+		{
+			if ( client instanceof AutoCloseable )
+			{
+				( (AutoCloseable) client ).close();
+
+				XIdcConnectionPool.clientClosed();
+			}
+			else if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Discarded IDC client cannot be closed, its connections are released when it is collected." );
+			}
+		}
+		catch ( Exception ex )
+		{
+			sLogger.warning( "Could not close a discarded IDC client.", ex );
+		}
+	}
+
+	private static IdcClient createClient( int socketTimeout, int clientCount ) throws IdcClientException
+	{
+		String 						contentServerFullUrl = XContentServerUtil.getContentServerFullURL();
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Content Server Integration Full URL: {0}", contentServerFullUrl );
+		}
+
+		IdcClientManager 			manager = new IdcClientManager();
+		IdcClient 					idcClient = manager.createClient( contentServerFullUrl );
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Created IDC client instance." );
+		}
+
+		IdcClientConfig				idcClientConfig	= idcClient.getConfig();
+		idcClientConfig.setSocketTimeout( socketTimeout );
+
+		XIdcConnectionPool.configure( idcClientConfig, clientCount );
+
+		boolean 					proxyIsSet = setProxyIfEnabled( idcClientConfig );
+
+		if ( !proxyIsSet )
+		{
+			idcClientConfig.setProperty( "http.library", "apache4" );
+		}
+
+		return idcClient;
+	}
+
+	private static boolean setProxyIfEnabled( IdcClientConfig idcClientConfig )
+	{
+		// Assume the proxy is not set
+		boolean		proxyIsSet = false;
+		boolean		useProxy = XPropertiesManager.getInstance().getBoolean( USE_PROXY_PROPERTY, false );
+
+		if ( useProxy && ( idcClientConfig instanceof IdcHttpClientConfig ) )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Checking if Oracle Documents proxy is enabled." );
+			}
+
+			try
+			{
+				if ( XString.isNotBlank( XHTTPProxy.getProxyHost() )
+					 && ( XString.isNotBlank( String.valueOf( XHTTPProxy.getProxyPort() ) ) ) )
+				{
+					IdcHttpClientConfig httpClientConfig = (IdcHttpClientConfig) idcClientConfig;
+					httpClientConfig.setHttpLibrary( HttpLibrary.httpurlconnection );
+
+					if ( sLogger.isDebugEnabled() )
+					{
+						sLogger.debug( "Setting Proxy in IdC Client: {0}:{1}", XHTTPProxy.getProxyHost(),
+									   XHTTPProxy.getProxyPort() );
+					}
+
+					httpClientConfig.setProxyHost( XHTTPProxy.getProxyHost() );
+					httpClientConfig.setProxyPort( XHTTPProxy.getProxyPort() );
+					httpClientConfig.setUseSystemProxy( false );
+					proxyIsSet = true;
+				}
+			}
+			catch ( XRuntimeException xre )
+			{
+				// Explicitly set this to false
+				sLogger.warning( "Unable to parse Oracle Documents proxy settings, setting to default.", xre );
+				proxyIsSet = false;
+			}
+		}
+
+		return proxyIsSet;
+	}
+
+	/**
+	 * Builds a key describing the settings the shared clients were created with. A different key means the clients
+	 * must be rebuilt.
+	 */
+	private static String getConfigurationKey( SortedSet<Integer> clientTimeouts )
+	{
+		StringBuilder	builder = new StringBuilder( XContentServerUtil.getContentServerFullURL() );
+
+		builder.append( "|proxy=" );
+
+		if ( XPropertiesManager.getInstance().getBoolean( USE_PROXY_PROPERTY, false ) )
+		{
+			try
+			{
+				builder.append( XHTTPProxy.getProxyHost() ).append( ':' ).append( XHTTPProxy.getProxyPort() );
+			}
+			catch ( XRuntimeException xre )
+			{
+				builder.append( "invalid" );
+			}
+		}
+		else
+		{
+			builder.append( "none" );
+		}
+
+		builder.append( '|' ).append( XIdcConnectionPool.getConfigurationKey() );
+		builder.append( "|timeouts=" ).append( clientTimeouts );
+
+		return builder.toString();
+	}
+
+	private static long getRecheckInterval()
+	{
+		return XPropertiesManager.getInstance().getLong( RECHECK_INTERVAL_PROPERTY, DEFAULT_RECHECK_INTERVAL );
+	}
+
+	private static final class ClientHolder
+	{
+		private final String							fConfigurationKey;
+		private final SortedSet<Integer>				fClientTimeouts;
+		private final ConcurrentMap<Integer, IdcClient>	fClients;
+		private final long								fCheckedTime;
+		private final int								fServiceCount;
+
+		private ClientHolder( String configurationKey, SortedSet<Integer> clientTimeouts, ConcurrentMap<Integer, IdcClient> clients )
+		{
+			fConfigurationKey = configurationKey;
+			fClientTimeouts = clientTimeouts;
+			fClients = clients;
+			fCheckedTime = System.currentTimeMillis();
+			fServiceCount = XIdcTimeoutPolicy.getServiceCount();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import oracle.stellent.ridc.IdcClientConfig;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.server.integration.docs.structs.XIdcConnectionPoolStatsStruct;
+
+/**
+ * Keep-alive connection pool settings and accounting for the RIDC transport.
+ *
+ * The pool is the RIDC connection pool of each IDC client, which the apache4 transport keeps persistent connections
+ * to Content Server in. waggle.server.docsintegration.pool.max.total is the number of connections of all IDC clients
+ * together (see XIdcClientRegistry): each client is given an equal share of it. Every client talks to the one
+ * Content Server route, so waggle.server.docsintegration.pool.max.per.route caps the share of each client. A request
+ * waits up to waggle.server.docsintegration.pool.lease.timeout.ms for a connection of its client. Connections that
+ * have been inactive for waggle.server.docsintegration.pool.validate.after.inactivity.ms are validated before the next
+ * request.
+ *
+ * RIDC does not expose the connection manager of its clients, so idle connections are evicted by discarding the
+ * clients: once no request has been made for waggle.server.docsintegration.pool.idle.evict.ms, the clients are
+ * closed (see XIdcClientRegistry#invalidate) and rebuilt on the next request. 0 disables the eviction.
+ *
+ * The requests in flight are only counted here, for the statistics; they are not limited beyond the RIDC pool.
+ */
+@XDisallowInstantiation
+final class XIdcConnectionPool
+{
+	private static final 	String 	MAX_TOTAL_PROPERTY = "waggle.server.docsintegration.pool.max.total";
+	private static final 	String 	LEASE_TIMEOUT_PROPERTY = "waggle.server.docsintegration.pool.lease.timeout.ms";
+	private static final 	String 	VALIDATE_AFTER_INACTIVITY_PROPERTY = "waggle.server.docsintegration.pool.validate.after.inactivity.ms";
+	private static final 	String 	MAX_PER_ROUTE_PROPERTY = "waggle.server.docsintegration.pool.max.per.route";
+	private static final 	String 	IDLE_EVICT_PROPERTY = "waggle.server.docsintegration.pool.idle.evict.ms";
+
+	private static final 	int 	DEFAULT_MAX_TOTAL = 50;
+	private static final 	long 	DEFAULT_LEASE_TIMEOUT = 30000L;
+	private static final 	long 	DEFAULT_VALIDATE_AFTER_INACTIVITY = 10000L;
+	private static final 	int 	DEFAULT_MAX_PER_ROUTE = 20;
+	private static final 	long 	DEFAULT_IDLE_EVICT = 300000L;
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static final 	AtomicLong 		sLastActivity = new AtomicLong( System.currentTimeMillis() );
+	private static final 	AtomicInteger 	sInFlight = new AtomicInteger();
+	private static final 	AtomicInteger 	sPeakInFlight = new AtomicInteger();
+	private static final 	AtomicLong 		sTotalRequests = new AtomicLong();
+	private static final 	AtomicLong 		sValidations = new AtomicLong();
+	private static final 	AtomicLong 		sValidationFailures = new AtomicLong();
+	private static final 	AtomicLong 		sClosedClients = new AtomicLong();
+	private static final 	AtomicLong 		sIdleEvictions = new AtomicLong();
+	private static final 	AtomicBoolean 	sIdleEvictionScheduled = new AtomicBoolean();
+
+	private XIdcConnectionPool()
+	{
+	}
+
+	/**
+	 * Applies the pool settings to a newly created IDC client configuration.
+	 *
+	 * @param idcClientConfig The client configuration.
+	 * @param clientCount The number of IDC clients the connections are shared by.
+	 */
+	static void configure( IdcClientConfig idcClientConfig, int clientCount )
+	{
+		int		connectionSize = getConnectionSize( clientCount );
+
+		idcClientConfig.setConnectionPool( "pool" );
+		idcClientConfig.setConnectionSize( connectionSize );
+		idcClientConfig.setConnectionWaitTime( (int) getLeaseTimeout() );
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Configured IDC connection pool: {0} connections, {1} of {2} in total.", connectionSize, getMaxTotal(), clientCount );
+		}
+
+		scheduleIdleEviction( getIdleEvict() );
+	}
+
+	/**
+	 * Schedules the idle eviction check, unless it is disabled or already scheduled.
+	 */
+	private static void scheduleIdleEviction( long delay )
+	{
+		if ( ( delay > 0 ) && sIdleEvictionScheduled.compareAndSet( false, true ) )
+		{
+			XIdcExecutor.schedule( XIdcConnectionPool::evictIfIdle, delay, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	/**
+	 * Discards the IDC clients, and with them their pooled connections, if no request has been made for the idle
+	 * eviction time. Otherwise checks again when that time will have passed since the last request.
+	 */
+	private static void evictIfIdle()
+	{
+		long	idleEvict = getIdleEvict();
+
+		sIdleEvictionScheduled.set( false );
+
+		if ( idleEvict <= 0 )
+		{
+			return;
+		}
+
+		long	idleTime = System.currentTimeMillis() - sLastActivity.get();
+
+		if ( ( sInFlight.get() == 0 ) && ( idleTime >= idleEvict ) )
+		{
+			sIdleEvictions.incrementAndGet();
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Content Server connections idle for {0} ms. Discarding the IDC clients.", idleTime );
+			}
+
+			// the next client created schedules the check again
+
+			XIdcClientRegistry.invalidate();
+
+			return;
+		}
+
+		scheduleIdleEviction( Math.max( 1000L, idleEvict - idleTime ) );
+	}
+
+	/**
+	 * Get a key describing the current pool settings. The IDC clients are rebuilt when it changes.
+	 *
+	 * @return The configuration key.
+	 */
+	static String getConfigurationKey()
+	{
+		return "pool=" + getMaxTotal() + "/" + getMaxPerRoute() + "/" + getLeaseTimeout();
+	}
+
+	/**
+	 * Records the start of a round trip.
+	 */
+	static void requestStarted()
+	{
+		int			inFlight = sInFlight.incrementAndGet();
+		int			peak = sPeakInFlight.get();
+
+		while ( ( inFlight > peak ) && !sPeakInFlight.compareAndSet( peak, inFlight ) )
+		{
+			peak = sPeakInFlight.get();
+		}
+
+		sTotalRequests.incrementAndGet();
+	}
+
+	/**
+	 * Records the end of a round trip, once the response has been read.
+	 */
+	static void requestFinished()
+	{
+		sInFlight.decrementAndGet();
+		sLastActivity.set( System.currentTimeMillis() );
+	}
+
+	/**
+	 * Checks whether the pooled connections have been inactive long enough to be validated before the next request.
+	 * Only one caller is told to validate for each period of inactivity.
+	 *
+	 * @return True if the caller should validate the connection.
+	 */
+	static boolean claimValidation()
+	{
+		long	lastActivity = sLastActivity.get();
+		long	now = System.currentTimeMillis();
+
+		if ( ( ( now - lastActivity ) > getValidateAfterInactivity() ) && sLastActivity.compareAndSet( lastActivity, now ) )
+		{
+			sValidations.incrementAndGet();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Records a failed connection validation.
+	 */
+	static void validationFailed()
+	{
+		sValidationFailures.incrementAndGet();
+	}
+
+	/**
+	 * Records a discarded IDC client whose connections were closed.
+	 */
+	static void clientClosed()
+	{
+		sClosedClients.incrementAndGet();
+	}
+
+	/**
+	 * Get the current pool statistics.
+	 *
+	 * @param clientCount The number of IDC clients the connections are shared by.
+	 * @return The statistics snapshot.
+	 */
+	static XIdcConnectionPoolStatsStruct getStatistics( int clientCount )
+	{
+		return new XIdcConnectionPoolStatsStruct( getMaxTotal(),
+												  getMaxPerRoute(),
+												  clientCount,
+												  getConnectionSize( clientCount ),
+												  sInFlight.get(),
+												  sPeakInFlight.get(),
+												  sTotalRequests.get(),
+												  sValidations.get(),
+												  sValidationFailures.get(),
+												  sClosedClients.get(),
+												  sIdleEvictions.get() );
+	}
+
+	private static int getConnectionSize( int clientCount )
+	{
+		return Math.max( 1, Math.min( getMaxPerRoute(), getMaxTotal() / Math.max( 1, clientCount ) ) );
+	}
+
+	private static int getMaxPerRoute()
+	{
+		return Math.max( 1, XPropertiesManager.getInstance().getInt( MAX_PER_ROUTE_PROPERTY, DEFAULT_MAX_PER_ROUTE ) );
+	}
+
+	private static long getIdleEvict()
+	{
+		return XPropertiesManager.getInstance().getLong( IDLE_EVICT_PROPERTY, DEFAULT_IDLE_EVICT );
+	}
+
+	private static int getMaxTotal()
+	{
+		return Math.max( 1, XPropertiesManager.getInstance().getInt( MAX_TOTAL_PROPERTY, DEFAULT_MAX_TOTAL ) );
+	}
+
+	private static long getLeaseTimeout()
+	{
+		return XPropertiesManager.getInstance().getLong( LEASE_TIMEOUT_PROPERTY, DEFAULT_LEASE_TIMEOUT );
+	}
+
+	private static long getValidateAfterInactivity()
+	{
+		return XPropertiesManager.getInstance().getLong( VALIDATE_AFTER_INACTIVITY_PROPERTY, DEFAULT_VALIDATE_AFTER_INACTIVITY );
+	}
+}
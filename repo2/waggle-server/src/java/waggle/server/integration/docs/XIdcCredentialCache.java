@@ -0,0 +1,183 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import oracle.stellent.ridc.IdcContext;
+import oracle.stellent.ridc.model.DataBinder;
+import oracle.stellent.ridc.protocol.ServiceException;
+
+import org.apache.http.client.HttpResponseException;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+import waggle.server.csf.XUsernamePasswordCredential;
+import waggle.server.identity.utils.XIdentityUtil;
+import waggle.server.utils.XValidate;
+
+/**
+ * In-memory cache of the APP ID credentials used to build the IdcContext for Content Server requests.
+ *
+ * The credentials are read from the credential store once and reused until the TTL expires, a credential rotation
+ * is signalled through {@link #credentialsRotated()}, or Content Server rejects them.
+ */
+@XDisallowInstantiation
+public final class XIdcCredentialCache
+{
+	private static final 	String 	TTL_PROPERTY = "waggle.server.docsintegration.credentials.ttl.ms";
+	private static final 	long 	DEFAULT_TTL = 900000L;
+	private static final 	String 	AUTHENTICATION_FAILURE_STATUS_CODES_PROPERTY = "waggle.server.docsintegration.credentials.authentication.failure.status.codes";
+	private static final 	String 	DEFAULT_AUTHENTICATION_FAILURE_STATUS_CODES = "";
+
+	private static final 	int 	HTTP_UNAUTHORIZED = 401;
+
+	/**
+	 * Content Server's access denied status. It is the answer for the impersonated user, not for the APP ID, so it
+	 * never counts as rejected credentials.
+	 */
+	private static final 	String 	ACCESS_DENIED_STATUS_CODE = "-20";
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static volatile CachedCredential	sCredential;
+
+	private XIdcCredentialCache()
+	{
+	}
+
+	/**
+	 * Get the APP ID user name and password credentials as an IdcContext object.
+	 *
+	 * @return The IdcContext instance.
+	 */
+	static IdcContext getIdcContext()
+	{
+		CachedCredential	credential = sCredential;
+
+		if ( ( credential == null ) || credential.isExpired() )
+		{
+			synchronized ( XIdcCredentialCache.class )
+			{
+				credential = sCredential;
+
+				if ( ( credential == null ) || credential.isExpired() )
+				{
+					credential = loadCredential();
+					sCredential = credential;
+				}
+			}
+		}
+
+		// IdcContext is cheap to build and carries per-request state, so a new one is handed to each caller.
+
+		return new IdcContext( credential.fName, credential.fPassword );
+	}
+
+	/**
+	 * Signals that the APP ID credentials have been rotated. The next request will re-read the credential store.
+	 */
+	public static void credentialsRotated()
+	{
+		sCredential = null;
+
+		sLogger.info( "Content Server APP ID credentials invalidated." );
+	}
+
+	/**
+	 * Checks whether an exception returned by Content Server indicates that the credentials were rejected.
+	 *
+	 * Only status codes are looked at, never the message text: an HTTP 401 from the transport, or a ServiceException
+	 * whose StatusCode is one of the login failure codes in
+	 * waggle.server.docsintegration.credentials.authentication.failure.status.codes (none by default). An access
+	 * denial for the impersonated user is never an authentication failure.
+	 *
+	 * @param throwable The exception.
+	 * @return True if it is an authentication failure.
+	 */
+	static boolean isAuthenticationFailure( Throwable throwable )
+	{
+		Throwable	cause = throwable;
+
+		while ( cause != null )
+		{
+			if ( cause instanceof HttpResponseException )
+			{
+				return ( (HttpResponseException) cause ).getStatusCode() == HTTP_UNAUTHORIZED;
+			}
+
+			if ( cause instanceof ServiceException )
+			{
+				DataBinder	binder = ( (ServiceException) cause ).getBinder();
+				String		statusCode = ( binder != null ) ? binder.getLocal( "StatusCode" ) : null;
+
+				return XString.isNotBlank( statusCode ) && isAuthenticationFailureStatusCode( statusCode.trim() );
+			}
+
+			cause = ( cause.getCause() == cause ) ? null : cause.getCause();
+		}
+
+		return false;
+	}
+
+	private static boolean isAuthenticationFailureStatusCode( String statusCode )
+	{
+		if ( ACCESS_DENIED_STATUS_CODE.equals( statusCode ) )
+		{
+			return false;
+		}
+
+		String	statusCodes = XPropertiesManager.getInstance().getString( AUTHENTICATION_FAILURE_STATUS_CODES_PROPERTY, DEFAULT_AUTHENTICATION_FAILURE_STATUS_CODES );
+
+		for ( String authenticationFailureStatusCode : statusCodes.split( "," ) )
+		{
+			if ( statusCode.equals( authenticationFailureStatusCode.trim() ) )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static CachedCredential loadCredential()
+	{
+		XUsernamePasswordCredential credentials = XIdentityUtil.getIdentityUserCredential();
+
+		XValidate.argumentNotNull( "Credentials", credentials );
+
+		String 						osnAppIdUser = credentials.getName();
+		String 						osnAppIdPassword = credentials.getPassword().toClearTextString();
+
+		XValidate.argumentNotEmpty( "ApplicationID", osnAppIdUser );
+		XValidate.argumentNotEmpty( "Password", osnAppIdPassword );
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Loaded OSN App ID User: {0}", osnAppIdUser );
+		}
+
+		long						ttl = XPropertiesManager.getInstance().getLong( TTL_PROPERTY, DEFAULT_TTL );
+
+		return new CachedCredential( osnAppIdUser, osnAppIdPassword, System.currentTimeMillis() + ttl );
+	}
+
+	private static final class CachedCredential
+	{
+		private final String	fName;
+		private final String	fPassword;
+		private final long		fExpiryTime;
+
+		private CachedCredential( String name, String password, long expiryTime )
+		{
+			fName = name;
+			fPassword = password;
+			fExpiryTime = expiryTime;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() >= fExpiryTime;
+		}
+	}
+}
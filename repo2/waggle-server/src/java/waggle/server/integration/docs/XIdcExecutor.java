@@ -0,0 +1,801 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.server.executor.XExecutorManager;
+import waggle.server.modules.user.database.user.XUserObject;
+import waggle.server.servlet.session.XSessionManager;
+import waggle.server.transaction.XTransactionRunnable;
+
+/**
+ * Dedicated, bounded executor for Content Server (IDC) work.
+ *
+ * Tasks run in their own transaction with the session of the submitting user, so the XIdcUtils services behave
+ * the same as when they are called inline. When the executor is saturated the returned future fails immediately
+ * instead of queueing without bound.
+ *
+ * In the opt-in virtual thread mode each task gets its own virtual thread, when the runtime supports them, and a
+ * configurable cap limits how many tasks talk to Content Server at once. On runtimes without virtual threads the
+ * bounded platform pool is used.
+ *
+ * Work that the caller waits for is forked with {@link #fork}, also from IDC threads. A fork is never waited for
+ * while it is queued: the joining thread runs it instead. Joining only ever waits for work that is already running,
+ * so IDC work nested in IDC work cannot exhaust the executor.
+ *
+ * The threads are stopped by {@link #shutdown()} when the application stops (see XIdcShutdownListener).
+ */
+@XDisallowInstantiation
+public final class XIdcExecutor
+{
+	private static final 	String 	POOL_SIZE_PROPERTY = "waggle.server.docsintegration.executor.pool.size";
+	private static final 	String 	QUEUE_SIZE_PROPERTY = "waggle.server.docsintegration.executor.queue.size";
+	private static final 	int 	DEFAULT_POOL_SIZE = 16;
+	private static final 	int 	DEFAULT_QUEUE_SIZE = 500;
+	private static final 	String 	VIRTUAL_THREADS_PROPERTY = "waggle.server.docsintegration.executor.virtual.threads";
+	private static final 	String 	VIRTUAL_CONCURRENCY_PROPERTY = "waggle.server.docsintegration.executor.virtual.max.concurrency";
+	private static final 	int 	DEFAULT_VIRTUAL_CONCURRENCY = 200;
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static volatile ThreadPoolExecutor			sExecutor;
+	private static volatile ScheduledExecutorService	sDeadlineTimer;
+	private static volatile VirtualThreadExecutor		sVirtualExecutor;
+	private static volatile boolean						sVirtualThreadsUnsupported;
+	private static volatile boolean						sShutdown;
+
+	private XIdcExecutor()
+	{
+	}
+
+	/**
+	 * Submits IDC work to the executor.
+	 *
+	 * @param name The name of the work, used for the transaction and logging.
+	 * @param task The work to run.
+	 * @param <T> The result type.
+	 * @return A future completed with the result of the work, or exceptionally with its failure.
+	 */
+	public static <T> CompletableFuture<T> submit( final String name, final Supplier<T> task )
+	{
+		final XUserObject			userObject = XSessionManager.getUserObject();
+		final CompletableFuture<T>	future = new CompletableFuture<>();
+
+		try
+		{
+			getExecutor().execute( new IdcTask()
+			{
+				@Override
+				void rejected( RejectedExecutionException ex )
+				{
+					future.completeExceptionally( ex );
+				}
+
+				@Override
+				public void run()
+				{
+					// the caller may have given up already (deadline or cancel)
+
+					if ( future.isDone() )
+					{
+						return;
+					}
+
+					try
+					{
+						future.complete( runAs( name, userObject, task ) );
+					}
+					catch ( Throwable t )
+					{
+						future.completeExceptionally( t );
+					}
+				}
+			} );
+		}
+		catch ( RejectedExecutionException ex )
+		{
+			sLogger.warning( "IDC executor is saturated. Rejected {0}.", name );
+
+			future.completeExceptionally( ex );
+		}
+
+		return future;
+	}
+
+	/**
+	 * Forks IDC work that the caller joins with {@link Fork#join()}.
+	 *
+	 * The work is queued on the executor, also when the calling thread is an IDC thread itself. Work that could not be
+	 * queued, or has not started by the time it is joined, is run by the joining thread, so a saturated executor
+	 * cannot deadlock nested forks.
+	 *
+	 * @param name The name of the work, used for the transaction and logging.
+	 * @param task The work to run.
+	 * @param <T> The result type.
+	 * @return The fork.
+	 */
+	public static <T> Fork<T> fork( final String name, final Supplier<T> task )
+	{
+		final Fork<T>				retval = new Fork<>( task );
+		final XUserObject			userObject = XSessionManager.getUserObject();
+
+		try
+		{
+			getExecutor().execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if ( retval.claim() )
+					{
+						retval.complete( () -> runAs( name, userObject, task ) );
+					}
+				}
+			} );
+		}
+		catch ( RejectedExecutionException ex )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "IDC executor is saturated. {0} will run on the joining thread.", name );
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Runs the tasks on the executor with at most the given number of them at a time, starting the next task as soon
+	 * as any finishes, so the time taken is bounded by the slowest chains of tasks rather than by the slowest task of
+	 * each batch. While it waits the calling thread runs queued tasks that no worker has picked up yet.
+	 *
+	 * After a task fails no further task is started; the first failure is thrown once the started tasks have
+	 * finished.
+	 *
+	 * @param name The name of the work, used for the transactions and logging.
+	 * @param tasks The tasks.
+	 * @param parallelism The maximum number of tasks in flight.
+	 * @param <T> The result type.
+	 * @return The results, in the order of the tasks.
+	 * @throws RuntimeException The first failure of any task.
+	 */
+	public static <T> List<T> forkAll( final String name, final List<? extends Supplier<T>> tasks, final int parallelism )
+	{
+		int								count = tasks.size();
+		List<T>							retval = new ArrayList<>( Collections.<T>nCopies( count, null ) );
+		BlockingQueue<Fork<T>>			finished = new LinkedBlockingQueue<>();
+		Map<Fork<T>, Integer>			inFlight = new IdentityHashMap<>();
+		int								next = 0;
+		RuntimeException				failure = null;
+		boolean							interrupted = false;
+
+		while ( ( next < count ) || !inFlight.isEmpty() )
+		{
+			while ( ( failure == null ) && ( next < count ) && ( inFlight.size() < Math.max( 1, parallelism ) ) )
+			{
+				final Fork<T>			fork = fork( name, tasks.get( next ) );
+
+				fork.fResult.whenComplete( ( result, throwable ) -> finished.add( fork ) );
+				inFlight.put( fork, next++ );
+			}
+
+			if ( ( failure != null ) && ( next < count ) )
+			{
+				next = count;
+			}
+
+			if ( inFlight.isEmpty() )
+			{
+				break;
+			}
+
+			Fork<T>						done = finished.poll();
+
+			if ( done == null )
+			{
+				// run a queued task here rather than only wait for the workers
+
+				for ( Fork<T> fork : inFlight.keySet() )
+				{
+					if ( fork.runHere() )
+					{
+						break;
+					}
+				}
+
+				while ( done == null )
+				{
+					try
+					{
+						done = finished.take();
+					}
+					catch ( InterruptedException ex )
+					{
+						interrupted = true;
+					}
+				}
+			}
+
+			int							index = inFlight.remove( done );
+
+			try
+			{
+				retval.set( index, done.join() );
+			}
+			catch ( RuntimeException ex )
+			{
+				if ( failure == null )
+				{
+					failure = ex;
+
+					// the tasks still queued are not started
+
+					for ( Fork<T> fork : inFlight.keySet() )
+					{
+						fork.cancel();
+					}
+				}
+			}
+		}
+
+		if ( interrupted )
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if ( failure != null )
+		{
+			throw failure;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Runs the tasks concurrently on the executor and waits for all of them to finish. Tasks that have not started
+	 * when they are waited for, or cannot be queued because the executor is saturated, are run on the calling thread.
+	 *
+	 * @param name The name of the work, used for the transactions and logging.
+	 * @param tasks The tasks.
+	 * @throws RuntimeException The first failure of any task, once all tasks have finished.
+	 */
+	public static void invokeAll( final String name, final List<Runnable> tasks )
+	{
+		List<Fork<Void>>				forks = new ArrayList<>( tasks.size() );
+
+		for ( final Runnable task : tasks )
+		{
+			forks.add( fork( name, () -> { task.run(); return null; } ) );
+		}
+
+		RuntimeException				failure = null;
+
+		for ( Fork<Void> fork : forks )
+		{
+			try
+			{
+				fork.join();
+			}
+			catch ( RuntimeException ex )
+			{
+				failure = ( failure == null ) ? ex : failure;
+			}
+		}
+
+		if ( failure != null )
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * Checks whether the opt-in virtual thread mode is enabled for IDC-bound work.
+	 *
+	 * @return True if enabled.
+	 */
+	public static boolean isVirtualThreadModeEnabled()
+	{
+		return XPropertiesManager.getInstance().getBoolean( VIRTUAL_THREADS_PROPERTY, false );
+	}
+
+	/**
+	 * Get the number of tasks the executor runs at once: the platform pool size, or the virtual thread concurrency
+	 * cap in virtual thread mode.
+	 *
+	 * @return The maximum concurrency.
+	 */
+	static int getMaxConcurrency()
+	{
+		if ( isVirtualThreadModeEnabled() && ( getVirtualExecutor() != null ) )
+		{
+			return Math.max( 1, XPropertiesManager.getInstance().getInt( VIRTUAL_CONCURRENCY_PROPERTY, DEFAULT_VIRTUAL_CONCURRENCY ) );
+		}
+
+		return Math.max( 1, XPropertiesManager.getInstance().getInt( POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE ) );
+	}
+
+	/**
+	 * Puts a deadline on a future. If the future has not completed in time, it is completed exceptionally with
+	 * a TimeoutException.
+	 *
+	 * @param future The future.
+	 * @param timeout The time allowed.
+	 * @param unit The unit of the timeout.
+	 * @param <T> The result type.
+	 * @return The same future.
+	 */
+	public static <T> CompletableFuture<T> withDeadline( final CompletableFuture<T> future, final long timeout, final TimeUnit unit )
+	{
+		if ( !future.isDone() )
+		{
+			final ScheduledFuture<?>	deadline = getDeadlineTimer().schedule( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					future.completeExceptionally( new TimeoutException( "IDC work did not complete within " + unit.toMillis( timeout ) + " ms." ) );
+				}
+			}, timeout, unit );
+
+			// drop the timer as soon as the work is done, so finished work does not pile up on the timer queue
+
+			future.whenComplete( ( result, throwable ) -> deadline.cancel( false ) );
+		}
+
+		return future;
+	}
+
+	/**
+	 * Runs a short piece of housekeeping after a delay, on the deadline timer.
+	 *
+	 * @param task The task. Must not block.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 */
+	static void schedule( final Runnable task, final long delay, final TimeUnit unit )
+	{
+		try
+		{
+			getDeadlineTimer().schedule( task, delay, unit );
+		}
+		catch ( RejectedExecutionException ex )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "IDC executor is shut down. Dropped housekeeping task." );
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker and timer threads, so a redeployed application does not leave the threads of the previous
+	 * one behind. Queued work fails with a RejectedExecutionException, running work is interrupted, and work
+	 * submitted afterwards is rejected (forks run on the joining thread).
+	 */
+	public static void shutdown()
+	{
+		ThreadPoolExecutor			executor;
+		ScheduledExecutorService	timer;
+		VirtualThreadExecutor		virtualExecutor;
+
+		synchronized ( XIdcExecutor.class )
+		{
+			sShutdown = true;
+
+			executor = sExecutor;
+			timer = sDeadlineTimer;
+			virtualExecutor = sVirtualExecutor;
+
+			sExecutor = null;
+			sDeadlineTimer = null;
+			sVirtualExecutor = null;
+		}
+
+		if ( executor != null )
+		{
+			for ( Runnable runnable : executor.shutdownNow() )
+			{
+				if ( runnable instanceof IdcTask )
+				{
+					( (IdcTask) runnable ).rejected( new RejectedExecutionException( "The IDC executor was shut down." ) );
+				}
+			}
+		}
+
+		if ( timer != null )
+		{
+			timer.shutdownNow();
+		}
+
+		if ( virtualExecutor != null )
+		{
+			virtualExecutor.shutdown();
+		}
+
+		sLogger.info( "IDC executor shut down." );
+	}
+
+	/**
+	 * Runs the work in a new transaction with the session set to the given user, or cleared if there is none. The
+	 * session of the thread is restored afterwards, since the thread is either pooled or the caller's own.
+	 */
+	static <T> T runAs( final String name, final XUserObject userObject, final Supplier<T> task )
+	{
+		final Object[]	result = new Object[ 1 ];
+
+		XExecutorManager.now( new XTransactionRunnable( name )
+		{
+			@Override
+			public void execute()
+			{
+				XUserObject		previousUserObject = XSessionManager.getUserObject();
+
+				if ( previousUserObject != userObject )
+				{
+					XSessionManager.setSession( userObject );
+				}
+
+				try
+				{
+					result[0] = task.get();
+				}
+				finally
+				{
+					if ( previousUserObject != userObject )
+					{
+						XSessionManager.setSession( previousUserObject );
+					}
+				}
+			}
+		} );
+
+		@SuppressWarnings( "unchecked" )
+		T	retval = (T) result[0];
+
+		return retval;
+	}
+
+	private static Executor getExecutor()
+	{
+		checkNotShutdown();
+
+		if ( isVirtualThreadModeEnabled() && !sVirtualThreadsUnsupported )
+		{
+			VirtualThreadExecutor	virtualExecutor = getVirtualExecutor();
+
+			if ( virtualExecutor != null )
+			{
+				return virtualExecutor;
+			}
+		}
+
+		return getPlatformExecutor();
+	}
+
+	private static VirtualThreadExecutor getVirtualExecutor()
+	{
+		VirtualThreadExecutor	executor = sVirtualExecutor;
+
+		if ( executor == null )
+		{
+			synchronized ( XIdcExecutor.class )
+			{
+				checkNotShutdown();
+
+				executor = sVirtualExecutor;
+
+				if ( ( executor == null ) && !sVirtualThreadsUnsupported )
+				{
+					try
+					{
+						Method		factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+						int			maxConcurrency = Math.max( 1, XPropertiesManager.getInstance().getInt( VIRTUAL_CONCURRENCY_PROPERTY, DEFAULT_VIRTUAL_CONCURRENCY ) );
+
+						executor = new VirtualThreadExecutor( (ExecutorService) factory.invoke( null ), maxConcurrency );
+						sVirtualExecutor = executor;
+
+						sLogger.info( "IDC work will run on virtual threads, at most {0} at a time.", maxConcurrency );
+					}
+					catch ( Exception ex )
+					{
+						sVirtualThreadsUnsupported = true;
+
+						sLogger.warning( "Virtual threads are not supported by this runtime. IDC work will run on the platform thread pool." );
+					}
+				}
+			}
+		}
+
+		return executor;
+	}
+
+	private static ThreadPoolExecutor getPlatformExecutor()
+	{
+		ThreadPoolExecutor	executor = sExecutor;
+
+		if ( executor == null )
+		{
+			synchronized ( XIdcExecutor.class )
+			{
+				checkNotShutdown();
+
+				executor = sExecutor;
+
+				if ( executor == null )
+				{
+					int		poolSize = Math.max( 1, XPropertiesManager.getInstance().getInt( POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE ) );
+					int		queueSize = Math.max( 1, XPropertiesManager.getInstance().getInt( QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE ) );
+
+					executor = new ThreadPoolExecutor( poolSize,
+													   poolSize,
+													   60L,
+													   TimeUnit.SECONDS,
+													   new ArrayBlockingQueue<Runnable>( queueSize ),
+													   new IdcThreadFactory( "IDC-Worker-" ),
+													   new ThreadPoolExecutor.AbortPolicy() );
+					executor.allowCoreThreadTimeOut( true );
+
+					sExecutor = executor;
+				}
+			}
+		}
+
+		return executor;
+	}
+
+	private static ScheduledExecutorService getDeadlineTimer()
+	{
+		checkNotShutdown();
+
+		ScheduledExecutorService	timer = sDeadlineTimer;
+
+		if ( timer == null )
+		{
+			synchronized ( XIdcExecutor.class )
+			{
+				checkNotShutdown();
+
+				timer = sDeadlineTimer;
+
+				if ( timer == null )
+				{
+					ScheduledThreadPoolExecutor		deadlineTimer = new ScheduledThreadPoolExecutor( 1, new IdcThreadFactory( "IDC-Deadline-" ) );
+
+					deadlineTimer.setRemoveOnCancelPolicy( true );
+
+					timer = deadlineTimer;
+					sDeadlineTimer = timer;
+				}
+			}
+		}
+
+		return timer;
+	}
+
+	private static void checkNotShutdown()
+	{
+		if ( sShutdown )
+		{
+			throw new RejectedExecutionException( "The IDC executor was shut down." );
+		}
+	}
+
+	/**
+	 * A task that is told when the executor gives up on it after accepting it. Plain runnables are dropped, which
+	 * is fine for forks: an unclaimed fork is run by the joining thread.
+	 */
+	private abstract static class IdcTask implements Runnable
+	{
+		/**
+		 * Called instead of run() when the task will not be run.
+		 *
+		 * @param ex The reason.
+		 */
+		abstract void rejected( RejectedExecutionException ex );
+	}
+
+	/**
+	 * Runs each task on its own virtual thread. The concurrency cap is enforced on the virtual thread itself, so
+	 * waiting tasks cost no platform threads.
+	 */
+	private static final class VirtualThreadExecutor implements Executor
+	{
+		private final ExecutorService	fExecutor;
+		private final Semaphore			fPermits;
+
+		private VirtualThreadExecutor( ExecutorService executor, int maxConcurrency )
+		{
+			fExecutor = executor;
+			fPermits = new Semaphore( maxConcurrency, true );
+		}
+
+		@Override
+		public void execute( final Runnable runnable )
+		{
+			fExecutor.execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						fPermits.acquire();
+					}
+					catch ( InterruptedException ex )
+					{
+						// the task never ran, so its caller is told here rather than left waiting
+
+						Thread.currentThread().interrupt();
+
+						if ( runnable instanceof IdcTask )
+						{
+							( (IdcTask) runnable ).rejected( new RejectedExecutionException( ex ) );
+						}
+
+						return;
+					}
+
+					try
+					{
+						runnable.run();
+					}
+					finally
+					{
+						fPermits.release();
+					}
+				}
+			} );
+		}
+
+		private void shutdown()
+		{
+			fExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * IDC work forked with {@link #fork}. Whichever of the executor and the joining thread claims the work first runs it.
+	 *
+	 * @param <T> The result type.
+	 */
+	public static final class Fork<T>
+	{
+		private final Supplier<T>			fTask;
+		private final AtomicBoolean			fClaimed = new AtomicBoolean();
+		private final CompletableFuture<T>	fResult = new CompletableFuture<>();
+
+		private Fork( Supplier<T> task )
+		{
+			fTask = task;
+		}
+
+		/**
+		 * Get the result of the work, running it on this thread if it has not started yet.
+		 *
+		 * @return The result.
+		 * @throws RuntimeException The failure of the work.
+		 */
+		public T join()
+		{
+			if ( claim() )
+			{
+				return fTask.get();
+			}
+
+			try
+			{
+				return fResult.join();
+			}
+			catch ( CompletionException ex )
+			{
+				Throwable	cause = ex.getCause();
+
+				if ( cause instanceof RuntimeException )
+				{
+					throw (RuntimeException) cause;
+				}
+				else if ( cause instanceof Error )
+				{
+					throw (Error) cause;
+				}
+
+				throw ex;
+			}
+		}
+
+		/**
+		 * Runs the work on this thread if it has not started yet. Its result is available through join().
+		 *
+		 * @return True if the work was run here.
+		 */
+		private boolean runHere()
+		{
+			if ( !claim() )
+			{
+				return false;
+			}
+
+			complete( fTask );
+
+			return true;
+		}
+
+		/**
+		 * Drops the work if it has not started. Work already running completes on its own.
+		 */
+		public void cancel()
+		{
+			if ( claim() )
+			{
+				fResult.cancel( false );
+			}
+		}
+
+		private boolean claim()
+		{
+			return fClaimed.compareAndSet( false, true );
+		}
+
+		private void complete( Supplier<T> task )
+		{
+			try
+			{
+				fResult.complete( task.get() );
+			}
+			catch ( Throwable t )
+			{
+				fResult.completeExceptionally( t );
+			}
+		}
+	}
+
+	private static final class IdcThreadFactory implements ThreadFactory
+	{
+		private final String			fPrefix;
+		private final AtomicInteger		fCount = new AtomicInteger();
+
+		private IdcThreadFactory( String prefix )
+		{
+			fPrefix = prefix;
+		}
+
+		@Override
+		public Thread newThread( Runnable runnable )
+		{
+			Thread	thread = new Thread( runnable, fPrefix + fCount.incrementAndGet() );
+
+			thread.setDaemon( true );
+
+			return thread;
+		}
+	}
+}
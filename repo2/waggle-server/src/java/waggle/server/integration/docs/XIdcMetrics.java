@@ -0,0 +1,546 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import oracle.stellent.ridc.model.DataBinder;
+import oracle.stellent.ridc.model.DataObject;
+import oracle.stellent.ridc.model.DataResultSet;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+import waggle.server.integration.docs.structs.XIdcServiceMetricsStruct;
+
+/**
+ * In-process metrics of the IDC requests sent to Content Server, kept per IdcService.
+ *
+ * Latencies are recorded in a fixed-bucket histogram, so recording is lock free and the percentiles are estimates
+ * bounded by the bucket edges. The exported histogram counts every request since startup; the percentiles only
+ * cover the last waggle.server.docsintegration.metrics.latency.window.ms, kept as a ring of time slices, so they
+ * follow Content Server when it speeds up or slows down. Payload sizes are estimated from the binder contents (local data and result sets),
+ * which is what dominates the wire size of an IDC request or response. Large result sets are sampled rather than
+ * walked, so the cost of the estimate on the request thread does not grow with the size of the response.
+ */
+@XDisallowInstantiation
+final class XIdcMetrics
+{
+	/**
+	 * Upper bounds, in milliseconds, of the latency buckets. The last bucket holds everything slower.
+	 */
+	private static final	long[]	LATENCY_BUCKETS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000 };
+
+	private static final	String	LATENCY_WINDOW_PROPERTY = "waggle.server.docsintegration.metrics.latency.window.ms";
+	private static final	long	DEFAULT_LATENCY_WINDOW = 300000L;
+	private static final	int		LATENCY_WINDOW_SLICES = 10;
+
+	/**
+	 * The number of rows of a result set measured to estimate its size.
+	 */
+	private static final	int		SIZE_SAMPLE_ROWS = 16;
+
+	private static final	String	METRIC_PREFIX = "waggle_idc_";
+	private static final	String	UNKNOWN_SERVICE = "UNKNOWN";
+
+	private static final	ConcurrentMap<String, ServiceMetrics>	sServiceMetrics = new ConcurrentHashMap<>();
+
+	private XIdcMetrics()
+	{
+	}
+
+	/**
+	 * Records a request that returned a response binder.
+	 *
+	 * @param serviceName The IdcService.
+	 * @param latency The round trip time, in milliseconds.
+	 * @param requestBinder The request binder.
+	 * @param responseBinder The response binder.
+	 */
+	static void recordResponse( String serviceName, long latency, DataBinder requestBinder, DataBinder responseBinder )
+	{
+		ServiceMetrics	metrics = getServiceMetrics( serviceName );
+		String			statusCode = responseBinder.getLocal( "StatusCode" );
+
+		metrics.record( latency, estimateSize( requestBinder ), estimateSize( responseBinder ) );
+
+		increment( metrics.fStatusCodes, XString.isBlank( statusCode ) ? "0" : statusCode );
+	}
+
+	/**
+	 * Records a request that failed with an exception.
+	 *
+	 * @param serviceName The IdcService.
+	 * @param latency The time until the failure, in milliseconds.
+	 * @param requestBinder The request binder.
+	 * @param throwable The failure.
+	 */
+	static void recordFailure( String serviceName, long latency, DataBinder requestBinder, Throwable throwable )
+	{
+		ServiceMetrics	metrics = getServiceMetrics( serviceName );
+
+		metrics.record( latency, estimateSize( requestBinder ), 0 );
+
+		increment( metrics.fExceptions, throwable.getClass().getSimpleName() );
+	}
+
+	/**
+	 * Records a retry of a request.
+	 *
+	 * @param serviceName The IdcService.
+	 */
+	static void recordRetry( String serviceName )
+	{
+		getServiceMetrics( serviceName ).fRetries.incrementAndGet();
+	}
+
+	/**
+	 * Get a snapshot of the metrics of every service seen so far, ordered by service name.
+	 *
+	 * @return The metrics.
+	 */
+	static List<XIdcServiceMetricsStruct> getMetrics()
+	{
+		List<XIdcServiceMetricsStruct>	retval = new ArrayList<>();
+
+		for ( Map.Entry<String, ServiceMetrics> entry : new TreeMap<>( sServiceMetrics ).entrySet() )
+		{
+			retval.add( entry.getValue().toStruct( entry.getKey() ) );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Get the metrics of one service.
+	 *
+	 * @param serviceName The IdcService.
+	 * @return The metrics, or null if the service has not been called.
+	 */
+	static XIdcServiceMetricsStruct getMetrics( String serviceName )
+	{
+		ServiceMetrics	metrics = sServiceMetrics.get( serviceName );
+
+		return ( metrics == null ) ? null : metrics.toStruct( serviceName );
+	}
+
+	/**
+	 * Get a latency percentile of a service over the recent window.
+	 *
+	 * @param serviceName The IdcService.
+	 * @param percentile The percentile, between 0 and 1.
+	 * @param minimumSamples The number of requests the window must hold for the estimate to be used.
+	 * @return The latency in milliseconds, or -1 if the window holds fewer requests.
+	 */
+	static long getRecentLatency( String serviceName, double percentile, int minimumSamples )
+	{
+		ServiceMetrics	metrics = sServiceMetrics.get( serviceName );
+
+		if ( metrics == null )
+		{
+			return -1;
+		}
+
+		LatencySnapshot	snapshot = metrics.getRecentLatencies();
+
+		return ( snapshot.fTotal < minimumSamples ) ? -1 : snapshot.getPercentile( percentile );
+	}
+
+	/**
+	 * Exports the metrics in the Prometheus text exposition format.
+	 *
+	 * @return The metrics text.
+	 */
+	static String export()
+	{
+		StringBuilder	builder = new StringBuilder();
+
+		builder.append( "# HELP " ).append( METRIC_PREFIX ).append( "request_duration_ms IDC request latency in milliseconds.\n" );
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "request_duration_ms histogram\n" );
+
+		Map<String, ServiceMetrics>		sortedMetrics = new TreeMap<>( sServiceMetrics );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			ServiceMetrics	metrics = entry.getValue();
+			String			service = "service=\"" + entry.getKey() + "\"";
+			long			cumulative = 0;
+
+			for ( int i = 0; i < LATENCY_BUCKETS.length; i++ )
+			{
+				cumulative += metrics.fBuckets.get( i );
+
+				appendSample( builder, "request_duration_ms_bucket", service + ",le=\"" + LATENCY_BUCKETS[i] + "\"", cumulative );
+			}
+
+			cumulative += metrics.fBuckets.get( LATENCY_BUCKETS.length );
+
+			appendSample( builder, "request_duration_ms_bucket", service + ",le=\"+Inf\"", cumulative );
+			appendSample( builder, "request_duration_ms_sum", service, metrics.fTotalLatency.get() );
+			appendSample( builder, "request_duration_ms_count", service, cumulative );
+		}
+
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "request_bytes_total counter\n" );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			appendSample( builder, "request_bytes_total", "service=\"" + entry.getKey() + "\"", entry.getValue().fRequestBytes.get() );
+		}
+
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "response_bytes_total counter\n" );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			appendSample( builder, "response_bytes_total", "service=\"" + entry.getKey() + "\"", entry.getValue().fResponseBytes.get() );
+		}
+
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "retries_total counter\n" );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			appendSample( builder, "retries_total", "service=\"" + entry.getKey() + "\"", entry.getValue().fRetries.get() );
+		}
+
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "responses_total counter\n" );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			for ( Map.Entry<String, Long> statusCode : snapshot( entry.getValue().fStatusCodes ).entrySet() )
+			{
+				appendSample( builder, "responses_total", "service=\"" + entry.getKey() + "\",status_code=\"" + statusCode.getKey() + "\"", statusCode.getValue() );
+			}
+		}
+
+		builder.append( "# TYPE " ).append( METRIC_PREFIX ).append( "exceptions_total counter\n" );
+
+		for ( Map.Entry<String, ServiceMetrics> entry : sortedMetrics.entrySet() )
+		{
+			for ( Map.Entry<String, Long> exception : snapshot( entry.getValue().fExceptions ).entrySet() )
+			{
+				appendSample( builder, "exceptions_total", "service=\"" + entry.getKey() + "\",exception=\"" + exception.getKey() + "\"", exception.getValue() );
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Clears all recorded metrics.
+	 */
+	static void reset()
+	{
+		sServiceMetrics.clear();
+	}
+
+	private static ServiceMetrics getServiceMetrics( String serviceName )
+	{
+		String			key = XString.isBlank( serviceName ) ? UNKNOWN_SERVICE : serviceName;
+		ServiceMetrics	metrics = sServiceMetrics.get( key );
+
+		if ( metrics == null )
+		{
+			sServiceMetrics.putIfAbsent( key, new ServiceMetrics() );
+			metrics = sServiceMetrics.get( key );
+		}
+
+		return metrics;
+	}
+
+	private static void increment( ConcurrentMap<String, AtomicLong> counters, String key )
+	{
+		AtomicLong	counter = counters.get( key );
+
+		if ( counter == null )
+		{
+			counters.putIfAbsent( key, new AtomicLong() );
+			counter = counters.get( key );
+		}
+
+		counter.incrementAndGet();
+	}
+
+	private static Map<String, Long> snapshot( ConcurrentMap<String, AtomicLong> counters )
+	{
+		Map<String, Long>	retval = new TreeMap<>();
+
+		for ( Map.Entry<String, AtomicLong> entry : counters.entrySet() )
+		{
+			retval.put( entry.getKey(), entry.getValue().get() );
+		}
+
+		return Collections.unmodifiableMap( retval );
+	}
+
+	private static void appendSample( StringBuilder builder, String name, String labels, long value )
+	{
+		builder.append( METRIC_PREFIX ).append( name ).append( '{' ).append( labels ).append( "} " ).append( value ).append( '\n' );
+	}
+
+	/**
+	 * Estimates the size of a binder as the number of characters in its local data and result sets. Result sets of
+	 * more than SIZE_SAMPLE_ROWS rows are estimated from that many rows spread over the set.
+	 */
+	private static long estimateSize( DataBinder binder )
+	{
+		if ( binder == null )
+		{
+			return 0;
+		}
+
+		long		size = estimateSize( binder.getLocalData() );
+
+		for ( String resultSetName : binder.getResultSetNames() )
+		{
+			DataResultSet	resultSet = binder.getResultSet( resultSetName );
+
+			if ( resultSet != null )
+			{
+				size += estimateSize( resultSet.getRows() );
+			}
+		}
+
+		return size;
+	}
+
+	private static long estimateSize( List<DataObject> rows )
+	{
+		int			count = ( rows != null ) ? rows.size() : 0;
+
+		if ( count <= SIZE_SAMPLE_ROWS )
+		{
+			long	size = 0;
+
+			for ( int i = 0; i < count; i++ )
+			{
+				size += estimateSize( rows.get( i ) );
+			}
+
+			return size;
+		}
+
+		long		sampleSize = 0;
+
+		for ( int i = 0; i < SIZE_SAMPLE_ROWS; i++ )
+		{
+			sampleSize += estimateSize( rows.get( (int) ( (long) i * count / SIZE_SAMPLE_ROWS ) ) );
+		}
+
+		return sampleSize * count / SIZE_SAMPLE_ROWS;
+	}
+
+	private static long estimateSize( DataObject dataObject )
+	{
+		long		size = 0;
+
+		if ( dataObject != null )
+		{
+			for ( Map.Entry<String, String> entry : dataObject.entrySet() )
+			{
+				size += ( entry.getKey() != null ) ? entry.getKey().length() : 0;
+				size += ( entry.getValue() != null ) ? entry.getValue().length() : 0;
+			}
+		}
+
+		return size;
+	}
+
+	private static int getBucket( long latency )
+	{
+		for ( int i = 0; i < LATENCY_BUCKETS.length; i++ )
+		{
+			if ( latency <= LATENCY_BUCKETS[i] )
+			{
+				return i;
+			}
+		}
+
+		return LATENCY_BUCKETS.length;
+	}
+
+	private static final class ServiceMetrics
+	{
+		private final AtomicLongArray					fBuckets = new AtomicLongArray( LATENCY_BUCKETS.length + 1 );
+		private final LatencySlice[]					fSlices = new LatencySlice[ LATENCY_WINDOW_SLICES ];
+		private final AtomicLong						fRequests = new AtomicLong();
+		private final AtomicLong						fTotalLatency = new AtomicLong();
+		private final AtomicLong						fMaxLatency = new AtomicLong();
+		private final AtomicLong						fRequestBytes = new AtomicLong();
+		private final AtomicLong						fResponseBytes = new AtomicLong();
+		private final AtomicLong						fRetries = new AtomicLong();
+		private final ConcurrentMap<String, AtomicLong>	fStatusCodes = new ConcurrentHashMap<>();
+		private final ConcurrentMap<String, AtomicLong>	fExceptions = new ConcurrentHashMap<>();
+
+		private ServiceMetrics()
+		{
+			for ( int i = 0; i < fSlices.length; i++ )
+			{
+				fSlices[i] = new LatencySlice();
+			}
+		}
+
+		private void record( long latency, long requestBytes, long responseBytes )
+		{
+			long	epoch = getEpoch();
+
+			fBuckets.incrementAndGet( getBucket( latency ) );
+			fSlices[ (int) ( epoch % fSlices.length ) ].record( epoch, latency );
+			fRequests.incrementAndGet();
+			fTotalLatency.addAndGet( latency );
+			fRequestBytes.addAndGet( requestBytes );
+			fResponseBytes.addAndGet( responseBytes );
+
+			long	max = fMaxLatency.get();
+
+			while ( ( latency > max ) && !fMaxLatency.compareAndSet( max, latency ) )
+			{
+				max = fMaxLatency.get();
+			}
+		}
+
+		/**
+		 * Adds up the slices of the recent window.
+		 */
+		private LatencySnapshot getRecentLatencies()
+		{
+			long			epoch = getEpoch();
+			LatencySnapshot	retval = new LatencySnapshot();
+
+			for ( LatencySlice slice : fSlices )
+			{
+				slice.addTo( retval, epoch - fSlices.length );
+			}
+
+			return retval;
+		}
+
+		private XIdcServiceMetricsStruct toStruct( String serviceName )
+		{
+			LatencySnapshot	recent = getRecentLatencies();
+
+			return new XIdcServiceMetricsStruct( serviceName,
+												 fRequests.get(),
+												 fTotalLatency.get(),
+												 fMaxLatency.get(),
+												 recent.getPercentile( 0.50 ),
+												 recent.getPercentile( 0.95 ),
+												 recent.getPercentile( 0.99 ),
+												 fRequestBytes.get(),
+												 fResponseBytes.get(),
+												 fRetries.get(),
+												 snapshot( fStatusCodes ),
+												 snapshot( fExceptions ) );
+		}
+	}
+
+	/**
+	 * The number of the time slice a moment falls in.
+	 */
+	private static long getEpoch()
+	{
+		long	sliceLength = Math.max( 1L, XPropertiesManager.getInstance().getLong( LATENCY_WINDOW_PROPERTY, DEFAULT_LATENCY_WINDOW ) / LATENCY_WINDOW_SLICES );
+
+		return System.currentTimeMillis() / sliceLength;
+	}
+
+	/**
+	 * The latency histogram of one time slice. The slice is reused, cleared first, once its place in the ring comes
+	 * round again.
+	 */
+	private static final class LatencySlice
+	{
+		private final AtomicLongArray	fBuckets = new AtomicLongArray( LATENCY_BUCKETS.length + 1 );
+		private final AtomicLong		fMaxLatency = new AtomicLong();
+		private volatile long			fEpoch = -1;
+
+		private void record( long epoch, long latency )
+		{
+			if ( fEpoch != epoch )
+			{
+				synchronized ( this )
+				{
+					if ( fEpoch != epoch )
+					{
+						for ( int i = 0; i < fBuckets.length(); i++ )
+						{
+							fBuckets.set( i, 0 );
+						}
+
+						fMaxLatency.set( 0 );
+						fEpoch = epoch;
+					}
+				}
+			}
+
+			fBuckets.incrementAndGet( getBucket( latency ) );
+
+			long	max = fMaxLatency.get();
+
+			while ( ( latency > max ) && !fMaxLatency.compareAndSet( max, latency ) )
+			{
+				max = fMaxLatency.get();
+			}
+		}
+
+		private void addTo( LatencySnapshot snapshot, long oldestEpoch )
+		{
+			if ( fEpoch <= oldestEpoch )
+			{
+				return;
+			}
+
+			for ( int i = 0; i < fBuckets.length(); i++ )
+			{
+				long	count = fBuckets.get( i );
+
+				snapshot.fCounts[i] += count;
+				snapshot.fTotal += count;
+			}
+
+			snapshot.fMaxLatency = Math.max( snapshot.fMaxLatency, fMaxLatency.get() );
+		}
+	}
+
+	/**
+	 * The latency histogram of the recent window.
+	 */
+	private static final class LatencySnapshot
+	{
+		private final long[]	fCounts = new long[ LATENCY_BUCKETS.length + 1 ];
+		private long			fTotal;
+		private long			fMaxLatency;
+
+		/**
+		 * Estimates a latency percentile as the upper bound of the bucket holding it.
+		 */
+		private long getPercentile( double percentile )
+		{
+			if ( fTotal == 0 )
+			{
+				return 0;
+			}
+
+			long	rank = (long) Math.ceil( fTotal * percentile );
+			long	cumulative = 0;
+
+			for ( int i = 0; i < LATENCY_BUCKETS.length; i++ )
+			{
+				cumulative += fCounts[i];
+
+				if ( cumulative >= rank )
+				{
+					return Math.min( LATENCY_BUCKETS[i], fMaxLatency );
+				}
+			}
+
+			return fMaxLatency;
+		}
+	}
+}
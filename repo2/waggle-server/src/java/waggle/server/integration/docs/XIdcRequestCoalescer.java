@@ -0,0 +1,163 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import oracle.stellent.ridc.IdcClientException;
+import oracle.stellent.ridc.model.DataBinder;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.log.XLog;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+
+/**
+ * Single-flight coalescing of identical concurrent IDC read requests.
+ *
+ * Requests are identified by their local data, which holds the IdcService, every parameter and the impersonated
+ * user header. While a read is in flight, identical reads wait for it and share its response instead of making
+ * their own round trip. Nothing is kept once the request completes; this is not a cache.
+ */
+@XDisallowInstantiation
+final class XIdcRequestCoalescer
+{
+	private static final 	String 	ENABLED_PROPERTY = "waggle.server.docsintegration.coalescing.enabled";
+
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	private static final 	ConcurrentMap<String, CompletableFuture<Object>>	sInFlight = new ConcurrentHashMap<>();
+
+	private XIdcRequestCoalescer()
+	{
+	}
+
+	/**
+	 * A request that can be shared between callers.
+	 *
+	 * @param <T> The result type.
+	 */
+	interface Request<T>
+	{
+		T send() throws IdcClientException;
+	}
+
+	/**
+	 * Checks whether a request is a read that may be shared.
+	 *
+	 * @param binder The request binder.
+	 * @return True if identical concurrent requests may share one round trip.
+	 */
+	static boolean isCoalescable( DataBinder binder )
+	{
+		String	serviceName = binder.getLocal( "IdcService" );
+
+		if ( XString.isBlank( serviceName ) ||
+			 !binder.getResultSetNames().isEmpty() ||
+			 !XPropertiesManager.getInstance().getBoolean( ENABLED_PROPERTY, true ) )
+		{
+			return false;
+		}
+
+		return serviceName.startsWith( "VIEW_" ) ||
+			   serviceName.startsWith( "GET_" ) ||
+			   serviceName.startsWith( "SCS_GET_" ) ||
+			   serviceName.startsWith( "SCS_CHECK_" ) ||
+			   serviceName.startsWith( "AR_GET_" ) ||
+			   serviceName.equals( "FLD_INFO" ) ||
+			   serviceName.equals( "AR_ASSET_INFO" );
+	}
+
+	/**
+	 * Sends the request, or waits for an identical request already in flight and shares its result.
+	 *
+	 * @param binder The request binder, identifying the request.
+	 * @param request The request.
+	 * @param <T> The result type.
+	 * @return The result.
+	 * @throws IdcClientException The failure of the shared request.
+	 */
+	static <T> T execute( DataBinder binder, Request<T> request ) throws IdcClientException
+	{
+		String						key = getKey( binder );
+		CompletableFuture<Object>	future = new CompletableFuture<>();
+		CompletableFuture<Object>	inFlight = sInFlight.putIfAbsent( key, future );
+
+		if ( inFlight != null )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Sharing in-flight IDC request for Service - {0}.", binder.getLocal( "IdcService" ) );
+			}
+
+			return join( inFlight );
+		}
+
+		try
+		{
+			T	result = request.send();
+
+			future.complete( result );
+
+			return result;
+		}
+		catch ( Throwable ex )
+		{
+			future.completeExceptionally( ex );
+
+			throw ex;
+		}
+		finally
+		{
+			sInFlight.remove( key, future );
+		}
+	}
+
+	private static String getKey( DataBinder binder )
+	{
+		// sorted, so the key does not depend on the order the parameters were put in
+
+		Map<String, String>		localData = new TreeMap<>( binder.getLocalData() );
+		StringBuilder			builder = new StringBuilder();
+
+		for ( Map.Entry<String, String> entry : localData.entrySet() )
+		{
+			builder.append( entry.getKey() ).append( '=' ).append( entry.getValue() ).append( '\n' );
+		}
+
+		return builder.toString();
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static <T> T join( CompletableFuture<Object> future ) throws IdcClientException
+	{
+		try
+		{
+			return (T) future.join();
+		}
+		catch ( CompletionException ex )
+		{
+			Throwable	cause = ex.getCause();
+
+			if ( cause instanceof IdcClientException )
+			{
+				throw (IdcClientException) cause;
+			}
+			else if ( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException) cause;
+			}
+			else if ( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+
+			throw ex;
+		}
+	}
+}
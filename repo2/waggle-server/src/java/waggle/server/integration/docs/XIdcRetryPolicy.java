@@ -0,0 +1,148 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import oracle.stellent.ridc.IdcClientException;
+import oracle.stellent.ridc.model.DataBinder;
+import oracle.stellent.ridc.protocol.ServiceException;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+
+/**
+ * Retry policy for idempotent IDC requests.
+ *
+ * Only requests that can safely be sent twice are retried: the VIEW_*, GET_* and FLD_INFO reads, services listed in
+ * waggle.server.docsintegration.retry.idempotent.services, and group operations sent with ignoreExistenceErrors.
+ * Only transport failures are retried; a ServiceException means Content Server answered and will answer the same way.
+ *
+ * Retries back off exponentially with full jitter. A retry budget, refilled by a fraction of every request, caps the
+ * retries so that an outage does not multiply the load on Content Server.
+ */
+@XDisallowInstantiation
+final class XIdcRetryPolicy
+{
+	private static final 	String 	ENABLED_PROPERTY = "waggle.server.docsintegration.retry.enabled";
+	private static final 	String 	MAX_ATTEMPTS_PROPERTY = "waggle.server.docsintegration.retry.max.attempts";
+	private static final 	String 	BASE_DELAY_PROPERTY = "waggle.server.docsintegration.retry.base.delay.ms";
+	private static final 	String 	MAX_DELAY_PROPERTY = "waggle.server.docsintegration.retry.max.delay.ms";
+	private static final 	String 	BUDGET_RATIO_PROPERTY = "waggle.server.docsintegration.retry.budget.percent";
+	private static final 	String 	BUDGET_MAX_PROPERTY = "waggle.server.docsintegration.retry.budget.max";
+	private static final 	String 	IDEMPOTENT_SERVICES_PROPERTY = "waggle.server.docsintegration.retry.idempotent.services";
+
+	private static final 	int 	DEFAULT_MAX_ATTEMPTS = 3;
+	private static final 	long 	DEFAULT_BASE_DELAY = 200L;
+	private static final 	long 	DEFAULT_MAX_DELAY = 5000L;
+	private static final 	int 	DEFAULT_BUDGET_PERCENT = 20;
+	private static final 	int 	DEFAULT_BUDGET_MAX = 50;
+
+	private static final 	String 	IGNORE_EXISTENCE_ERRORS_PARAM = "ignoreExistenceErrors";
+
+	/**
+	 * The retry budget, in hundredths of a retry.
+	 */
+	private static long		sBudget = DEFAULT_BUDGET_MAX * 100L;
+
+	private XIdcRetryPolicy()
+	{
+	}
+
+	/**
+	 * Checks whether a request may be retried at all.
+	 *
+	 * @param serviceName The IdcService.
+	 * @param binder The request binder.
+	 * @return True if the request is idempotent and retries are enabled.
+	 */
+	static boolean isRetryable( String serviceName, DataBinder binder )
+	{
+		if ( XString.isBlank( serviceName ) || !XPropertiesManager.getInstance().getBoolean( ENABLED_PROPERTY, true ) )
+		{
+			return false;
+		}
+
+		if ( serviceName.startsWith( "VIEW_" ) || serviceName.startsWith( "GET_" ) || serviceName.equals( "FLD_INFO" ) )
+		{
+			return true;
+		}
+
+		if ( "true".equalsIgnoreCase( binder.getLocal( IGNORE_EXISTENCE_ERRORS_PARAM ) ) )
+		{
+			return true;
+		}
+
+		String	idempotentServices = XPropertiesManager.getInstance().getString( IDEMPOTENT_SERVICES_PROPERTY, "" );
+
+		for ( String idempotentService : idempotentServices.split( "," ) )
+		{
+			if ( serviceName.equals( idempotentService.trim() ) )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds the share of one request to the retry budget.
+	 */
+	static synchronized void requestStarted()
+	{
+		long	maxBudget = XPropertiesManager.getInstance().getInt( BUDGET_MAX_PROPERTY, DEFAULT_BUDGET_MAX ) * 100L;
+
+		sBudget = Math.min( maxBudget, sBudget + XPropertiesManager.getInstance().getInt( BUDGET_RATIO_PROPERTY, DEFAULT_BUDGET_PERCENT ) );
+	}
+
+	/**
+	 * Decides whether a failed attempt should be retried, and takes one retry from the budget if so.
+	 *
+	 * @param ex The failure.
+	 * @param attempt The number of attempts made so far.
+	 * @return True if the request should be sent again.
+	 */
+	static boolean shouldRetry( IdcClientException ex, int attempt )
+	{
+		if ( ( ex instanceof ServiceException ) || XIdcCredentialCache.isAuthenticationFailure( ex ) )
+		{
+			return false;
+		}
+
+		if ( attempt >= XPropertiesManager.getInstance().getInt( MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS ) )
+		{
+			return false;
+		}
+
+		return takeFromBudget();
+	}
+
+	/**
+	 * Get the delay before the next attempt: a random time up to an exponentially growing cap.
+	 *
+	 * @param attempt The number of attempts made so far.
+	 * @return The delay in milliseconds.
+	 */
+	static long getBackoff( int attempt )
+	{
+		long	baseDelay = XPropertiesManager.getInstance().getLong( BASE_DELAY_PROPERTY, DEFAULT_BASE_DELAY );
+		long	maxDelay = XPropertiesManager.getInstance().getLong( MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY );
+		long	cap = Math.min( maxDelay, baseDelay << Math.min( attempt - 1, 20 ) );
+
+		return ThreadLocalRandom.current().nextLong( cap + 1 );
+	}
+
+	private static synchronized boolean takeFromBudget()
+	{
+		if ( sBudget < 100L )
+		{
+			return false;
+		}
+
+		sBudget -= 100L;
+
+		return true;
+	}
+}
@@ -0,0 +1,42 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import waggle.core.log.XLog;
+
+/**
+ * Releases the threads and connections of the Content Server integration when the application stops.
+ *
+ * The IDC clients are closed first, including discarded clients still waiting for their delayed close, and then the
+ * IDC executor and its timer are shut down. Without this a redeploy leaves the worker and timer threads and the
+ * pooled connections of the previous deployment behind.
+ */
+@WebListener
+public final class XIdcShutdownListener implements ServletContextListener
+{
+	private static final 	XLog 	sLogger = XLog.getLogger();
+
+	@Override
+	public void contextInitialized( ServletContextEvent event )
+	{
+	}
+
+	@Override
+	public void contextDestroyed( ServletContextEvent event )
+	{
+		try
+		{
+			XIdcClientRegistry.shutdown();
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.warning( "Could not close the IDC clients.", ex );
+		}
+
+		XIdcExecutor.shutdown();
+	}
+}
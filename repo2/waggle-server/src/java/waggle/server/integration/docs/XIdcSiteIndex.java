@@ -0,0 +1,183 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.properties.XPropertiesManager;
+
+/**
+ * Local index of Content Server site and site template names to their folder GUIDs.
+ *
+ * SCS_BROWSE_SITES only returns the sites the impersonated user can see, so each user has an index of their own,
+ * kept in the site.index cache (see XIdcCache); a user never gets a GUID from a crawl made as somebody else. Each
+ * index is filled by a full crawl of SCS_BROWSE_SITES, topped up with every row seen by a live scan, and updated
+ * when a site is created. A full crawl older than waggle.server.docsintegration.site.index.refresh.ms marks the index
+ * stale; it is still used, and a refresh is claimed by one caller.
+ */
+@XDisallowInstantiation
+final class XIdcSiteIndex
+{
+	private static final 	String 	REFRESH_INTERVAL_PROPERTY = "waggle.server.docsintegration.site.index.refresh.ms";
+	private static final 	long 	DEFAULT_REFRESH_INTERVAL = 900000L;
+
+	private static final 	XIdcCache<String, Index>	sIndexes = new XIdcCache<>( "site.index", 1000, 3600000L );
+
+	private XIdcSiteIndex()
+	{
+	}
+
+	/**
+	 * Checks whether a full crawl has filled the index.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @return True if the index can be used.
+	 */
+	static boolean isPopulated( String userName, boolean isTemplate )
+	{
+		return getIndex( userName, isTemplate ).fCrawlTime > 0;
+	}
+
+	/**
+	 * Looks up the GUID of a site.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @param siteName The site name.
+	 * @return The GUID, or null if the site is not in the index.
+	 */
+	static String get( String userName, boolean isTemplate, String siteName )
+	{
+		return getIndex( userName, isTemplate ).fGUIDs.get( siteName );
+	}
+
+	/**
+	 * Claims the refresh of a stale index. Only one caller is given the claim until {@link #replace} or
+	 * {@link #refreshFailed} is called for the index of the user.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @return True if the caller should refresh the index.
+	 */
+	static boolean claimRefresh( String userName, boolean isTemplate )
+	{
+		Index	index = getIndex( userName, isTemplate );
+		long	refreshInterval = XPropertiesManager.getInstance().getLong( REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL );
+
+		return ( ( System.currentTimeMillis() - index.fCrawlTime ) > refreshInterval ) && index.fRefreshing.compareAndSet( false, true );
+	}
+
+	/**
+	 * Replaces the index with the result of a full crawl.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @param sites The site names and GUIDs.
+	 */
+	static void replace( String userName, boolean isTemplate, Map<String, String> sites )
+	{
+		Index	index = getIndex( userName, isTemplate );
+
+		// sites created during the crawl are kept, they are put after the crawl started
+
+		index.fGUIDs.putAll( sites );
+		index.fGUIDs.keySet().retainAll( sites.keySet() );
+		index.fGUIDs.putAll( index.fCreated );
+		index.fCreated.clear();
+
+		index.fCrawlTime = System.currentTimeMillis();
+		index.fRefreshing.set( false );
+	}
+
+	/**
+	 * Releases the refresh claim after a failed crawl.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 */
+	static void refreshFailed( String userName, boolean isTemplate )
+	{
+		getIndex( userName, isTemplate ).fRefreshing.set( false );
+	}
+
+	/**
+	 * Adds the sites seen by a live scan.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @param sites The site names and GUIDs.
+	 */
+	static void putAll( String userName, boolean isTemplate, Map<String, String> sites )
+	{
+		getIndex( userName, isTemplate ).fGUIDs.putAll( sites );
+	}
+
+	/**
+	 * Adds a newly created site.
+	 *
+	 * @param userName The user the sites are browsed as.
+	 * @param isTemplate True for site templates.
+	 * @param siteName The site name.
+	 * @param siteGUID The site GUID.
+	 */
+	static void siteCreated( String userName, boolean isTemplate, String siteName, String siteGUID )
+	{
+		Index	index = getIndex( userName, isTemplate );
+
+		index.fGUIDs.put( siteName, siteGUID );
+
+		if ( index.fRefreshing.get() )
+		{
+			index.fCreated.put( siteName, siteGUID );
+		}
+	}
+
+	/**
+	 * Empties the indexes of users, for example after their permissions changed, in a single pass. Their next lookup
+	 * does a full crawl.
+	 *
+	 * @param userNames The user names.
+	 */
+	static void invalidate( final Set<String> userNames )
+	{
+		sIndexes.invalidateIf( key -> userNames.contains( XIdcUtils.getCacheKeyUserName( key ) ) );
+	}
+
+	/**
+	 * Empties the indexes of all users. The next lookup does a full crawl.
+	 */
+	static void invalidate()
+	{
+		sIndexes.invalidateAll();
+	}
+
+	private static synchronized Index getIndex( String userName, boolean isTemplate )
+	{
+		String						key = userName + '\n' + isTemplate;
+		XIdcCache.Entry<Index>		entry = sIndexes.get( key );
+
+		if ( entry != null )
+		{
+			return entry.getValue();
+		}
+
+		Index						retval = new Index();
+
+		sIndexes.put( key, retval, sIndexes.getStamp() );
+
+		return retval;
+	}
+
+	private static final class Index
+	{
+		private final Map<String, String>	fGUIDs = new ConcurrentHashMap<>();
+		private final Map<String, String>	fCreated = new ConcurrentHashMap<>();
+		private final AtomicBoolean			fRefreshing = new AtomicBoolean();
+		private volatile long				fCrawlTime;
+	}
+}
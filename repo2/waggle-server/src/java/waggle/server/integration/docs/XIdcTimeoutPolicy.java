@@ -0,0 +1,200 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import waggle.core.annotations.XDisallowInstantiation;
+import waggle.core.properties.XPropertiesManager;
+import waggle.core.utils.XString;
+
+/**
+ * Socket timeout policy per IdcService.
+ *
+ * Each service has a configured timeout: waggle.server.docsintegration.timeout.&lt;IdcService&gt;.ms, falling back
+ * to a built-in default for its kind (interactive reads, group changes, bulk site operations) and then to
+ * waggle.server.docsintegration.timeout.default.ms.
+ *
+ * In adaptive mode the timeout follows the p99 latency of the service over the recent metrics window (see
+ * XIdcMetrics) times a multiplier, never below the adaptive minimum and never above the configured timeout.
+ * Timeouts are rounded up to a fixed set of buckets so only a few IDC clients are needed (see
+ * {@link #getClientTimeouts()}).
+ */
+@XDisallowInstantiation
+final class XIdcTimeoutPolicy
+{
+	private static final 	String 	PROPERTY_PREFIX = "waggle.server.docsintegration.timeout.";
+	private static final 	String 	PROPERTY_SUFFIX = ".ms";
+	private static final 	String 	DEFAULT_TIMEOUT_PROPERTY = "waggle.server.docsintegration.timeout.default.ms";
+	private static final 	String 	ADAPTIVE_PROPERTY = "waggle.server.docsintegration.timeout.adaptive";
+	private static final 	String 	ADAPTIVE_MULTIPLIER_PROPERTY = "waggle.server.docsintegration.timeout.adaptive.multiplier";
+	private static final 	String 	ADAPTIVE_MINIMUM_PROPERTY = "waggle.server.docsintegration.timeout.adaptive.min.ms";
+	private static final 	String 	ADAPTIVE_SAMPLES_PROPERTY = "waggle.server.docsintegration.timeout.adaptive.min.samples";
+
+	private static final 	int 	INTERACTIVE_TIMEOUT = 30000;
+	private static final 	int 	UPDATE_TIMEOUT = 60000;
+	private static final 	int 	DEFAULT_ADAPTIVE_MULTIPLIER = 3;
+	private static final 	int 	DEFAULT_ADAPTIVE_MINIMUM = 5000;
+	private static final 	int 	DEFAULT_ADAPTIVE_SAMPLES = 100;
+
+	/**
+	 * The timeouts, in milliseconds, a service timeout is rounded up to.
+	 */
+	private static final 	int[] 	TIMEOUT_BUCKETS = { 5000, 10000, 15000, 30000, 60000, 120000, 180000, 300000 };
+
+	private static final 	Map<String, Integer> 	sDefaultTimeouts = new HashMap<>();
+
+	/**
+	 * Every service a timeout was asked for, so a timeout configured for a service without a built-in default gets
+	 * a client as well.
+	 */
+	private static final 	Set<String> 			sServices = ConcurrentHashMap.newKeySet();
+
+	static
+	{
+		// Interactive reads. A user is usually waiting for these.
+
+		for ( String serviceName : new String[] { "FLD_INFO", "AR_ASSET_INFO", "SCS_CHECK_SITE_ACCESS_AND_ROLE", "GET_SHARED_FOLDER_USERS",
+												  "AR_GET_SHARED_REPOSITORY_USERS", "CREATE_HYBRID_LINK", "GET_SEARCH_RESULTS",
+												  "SCS_BROWSE_SITES", "SCS_GET_SITE_PART_GUID", "SCS_GET_BACKGROUND_SERVICE_JOB_STATUS",
+												  "VIEW_GROUP_INFO", "PING_SERVER" } )
+		{
+			sDefaultTimeouts.put( serviceName, INTERACTIVE_TIMEOUT );
+		}
+
+		// Group and tenant changes.
+
+		for ( String serviceName : new String[] { "CREATE_GROUP", "DELETE_GROUP", "MODIFY_GROUP", "JOIN_GROUP", "LEAVE_GROUP",
+												  "ADD_GROUP_MEMBERS", "REMOVE_GROUP_MEMBERS", "GRANT_GROUP_PRIVILEGE",
+												  "MODIFY_GROUP_PRIVILEGE", "REVOKE_GROUP_PRIVILEGE", "SET_TENANT_CONFIG",
+												  "DELETE_USER_AVATAR", "REMOVE_TENANT_LOGO", "SCS_ACTIVATE_SITE", "SCS_DEACTIVATE_SITE" } )
+		{
+			sDefaultTimeouts.put( serviceName, UPDATE_TIMEOUT );
+		}
+
+		// Uploads, bulk site operations (UPDATE_AVATAR, UPLOAD_TENANT_LOGO, SCS_COPY_SITES, SCS_IMPORT_OOTB_TEMPLATES) and
+		// the member and privilege lists of large groups (VIEW_GROUP_MEMBERS, VIEW_GROUP_PRIVILEGES) keep the default timeout.
+	}
+
+	private XIdcTimeoutPolicy()
+	{
+	}
+
+	/**
+	 * Get the socket timeout for a service.
+	 *
+	 * @param serviceName The IdcService.
+	 * @return The timeout in milliseconds, rounded up to a timeout bucket.
+	 */
+	static int getTimeout( String serviceName )
+	{
+		if ( XString.isNotBlank( serviceName ) )
+		{
+			sServices.add( serviceName );
+		}
+
+		int		timeout = getConfiguredTimeout( serviceName );
+
+		if ( XPropertiesManager.getInstance().getBoolean( ADAPTIVE_PROPERTY, false ) )
+		{
+			timeout = getAdaptiveTimeout( serviceName, timeout );
+		}
+
+		return toBucket( timeout );
+	}
+
+	/**
+	 * Get the socket timeouts the IDC clients are built with: the bucket of the default timeout and of the timeout of
+	 * every service with a built-in default or seen so far, and in adaptive mode every bucket below the longest of
+	 * them as well.
+	 *
+	 * @return The timeouts in milliseconds, in ascending order.
+	 */
+	static SortedSet<Integer> getClientTimeouts()
+	{
+		TreeSet<Integer>	retval = new TreeSet<>();
+
+		retval.add( toBucket( getConfiguredTimeout( null ) ) );
+
+		for ( String serviceName : sDefaultTimeouts.keySet() )
+		{
+			retval.add( toBucket( getConfiguredTimeout( serviceName ) ) );
+		}
+
+		for ( String serviceName : sServices )
+		{
+			retval.add( toBucket( getConfiguredTimeout( serviceName ) ) );
+		}
+
+		if ( XPropertiesManager.getInstance().getBoolean( ADAPTIVE_PROPERTY, false ) )
+		{
+			for ( int bucket : TIMEOUT_BUCKETS )
+			{
+				if ( bucket < retval.last() )
+				{
+					retval.add( bucket );
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Get the number of services a timeout was asked for so far. It only grows.
+	 *
+	 * @return The number of services.
+	 */
+	static int getServiceCount()
+	{
+		return sServices.size();
+	}
+
+	private static int getConfiguredTimeout( String serviceName )
+	{
+		int		defaultTimeout = XPropertiesManager.getInstance().getInt( DEFAULT_TIMEOUT_PROPERTY, XIdcClientRegistry.getDefaultSocketTimeout() );
+
+		if ( XString.isBlank( serviceName ) )
+		{
+			return defaultTimeout;
+		}
+
+		Integer	serviceDefault = sDefaultTimeouts.get( serviceName );
+
+		return XPropertiesManager.getInstance().getInt( PROPERTY_PREFIX + serviceName + PROPERTY_SUFFIX,
+														( serviceDefault != null ) ? Math.min( serviceDefault, defaultTimeout ) : defaultTimeout );
+	}
+
+	private static int getAdaptiveTimeout( String serviceName, int configuredTimeout )
+	{
+		long	latency = XIdcMetrics.getRecentLatency( serviceName, 0.99, XPropertiesManager.getInstance().getInt( ADAPTIVE_SAMPLES_PROPERTY, DEFAULT_ADAPTIVE_SAMPLES ) );
+
+		if ( latency < 0 )
+		{
+			return configuredTimeout;
+		}
+
+		long	adaptiveTimeout = latency * XPropertiesManager.getInstance().getInt( ADAPTIVE_MULTIPLIER_PROPERTY, DEFAULT_ADAPTIVE_MULTIPLIER );
+		long	minimumTimeout = XPropertiesManager.getInstance().getInt( ADAPTIVE_MINIMUM_PROPERTY, DEFAULT_ADAPTIVE_MINIMUM );
+
+		return (int) Math.min( configuredTimeout, Math.max( minimumTimeout, adaptiveTimeout ) );
+	}
+
+	private static int toBucket( int timeout )
+	{
+		for ( int bucket : TIMEOUT_BUCKETS )
+		{
+			if ( timeout <= bucket )
+			{
+				return bucket;
+			}
+		}
+
+		return timeout;
+	}
+}
@@ -2,26 +2,37 @@
 
 package waggle.server.integration.docs;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import oracle.stellent.ridc.IdcClient;
-import oracle.stellent.ridc.IdcClientConfig;
 import oracle.stellent.ridc.IdcClientException;
-import oracle.stellent.ridc.IdcClientManager;
 import oracle.stellent.ridc.IdcContext;
-import oracle.stellent.ridc.common.http.utils.RIDCHttpConstants.HttpLibrary;
 import oracle.stellent.ridc.model.DataBinder;
 import oracle.stellent.ridc.model.DataObject;
 import oracle.stellent.ridc.model.DataResultSet;
 import oracle.stellent.ridc.model.TransferFile;
 import oracle.stellent.ridc.protocol.Protocol;
+import oracle.stellent.ridc.protocol.ServiceException;
 import oracle.stellent.ridc.protocol.ServiceResponse;
-import oracle.stellent.ridc.protocol.http.IdcHttpClientConfig;
 
 import waggle.common.modules.conversation.enums.XConversationRole;
 import waggle.common.modules.document.infos.XContentServerVersionInfo;
@@ -35,7 +46,6 @@ import waggle.common.modules.user.infos.XUserInfo;
 import waggle.core.annotations.XDisallowInstantiation;
 import waggle.core.api.XAPIInputStream;
 import waggle.core.exceptions.XRuntimeException;
-import waggle.core.http.XHTTPProxy;
 import waggle.core.id.XObjectID;
 import waggle.core.log.XLog;
 import waggle.core.properties.XPropertiesManager;
@@ -46,10 +56,12 @@ import waggle.core.utils.XFormat;
 import waggle.core.utils.XString;
 import waggle.server.accesscontrol.XAccessControlUtil;
 import waggle.server.accesscontrol.infos.XResourceInfo;
-import waggle.server.csf.XUsernamePasswordCredential;
 import waggle.server.hybridlink.XHybridLinkPermissions;
-import waggle.server.identity.utils.XIdentityUtil;
 import waggle.server.integration.docs.enums.XGroupSyncAction;
+import waggle.server.integration.docs.structs.XIdcArtifactInfoStruct;
+import waggle.server.integration.docs.structs.XIdcCacheStatsStruct;
+import waggle.server.integration.docs.structs.XIdcConnectionPoolStatsStruct;
+import waggle.server.integration.docs.structs.XIdcServiceMetricsStruct;
 import waggle.server.integration.docs.structs.XGroupSyncStruct;
 import waggle.server.modules.group.database.group.XGroupObject;
 import waggle.server.modules.group.database.group.XGroupObjectManager;
@@ -107,8 +119,13 @@ public final class XIdcUtils
 	private static final 	String SERVICE_ASSET_INFO = "AR_ASSET_INFO";
 	private static final 	String SERVICE_SHARED_REPO_USERS = "AR_GET_SHARED_REPOSITORY_USERS";
 	private static final 	String SERVICE_SHARED_FOLDER_USERS = "GET_SHARED_FOLDER_USERS";
+	private static final 	String SERVICE_PING_SERVER = "PING_SERVER";
 
 	private static final	int DEFAULT_PAGE_SIZE = 20;
+	private static final	int DEFAULT_SITE_INDEX_PAGE_SIZE = 200;
+	private static final	String SITE_INDEX_PAGE_SIZE_PROPERTY = "waggle.server.docsintegration.site.index.page.size";
+	private static final	int DEFAULT_SITE_CRAWL_PARALLELISM = 4;
+	private static final	String SITE_CRAWL_PARALLELISM_PROPERTY = "waggle.server.docsintegration.site.crawl.parallelism";
 	private static final	int STATUS_CODE_SUCCESS = 0;
 
 	private static final 	String SERVICE_AVATAR_PARAM = "avatarPath";
@@ -133,118 +150,81 @@ public final class XIdcUtils
 
 	private static final 	XLog sLogger = XLog.getLogger();
 
-	private XIdcUtils()
-	{
-	}
+	private static final	XIdcCache<String, String>	sFileVersionCache = new XIdcCache<>( "file.version", 10000, 300000L );
 
-	/**
-	 * Get the IDC client object for invoking services in Content Server.
-	 *
-	 * @return The IdcClient object.
-	 *
-	 * @throws IdcClientException Exception during client creation.
-	 */
-	private static IdcClient getIdcClient() throws IdcClientException
-	{
-		String 						contentServerFullUrl = XContentServerUtil.getContentServerFullURL();
+	private static final	String	PERMISSION_NEGATIVE_TTL_PROPERTY = "waggle.server.docsintegration.cache.permission.negative.ttl.ms";
+	private static final	long	DEFAULT_PERMISSION_NEGATIVE_TTL = 10000L;
 
-		if ( sLogger.isDebugEnabled() )
-		{
-			sLogger.debug( "Content Server Integration Full URL: {0}", contentServerFullUrl );
-		}
+	private static final	XIdcCache<String, XConversationRole>	sPermissionCache = new XIdcCache<>( "permission", 50000, 60000L );
 
-		IdcClientManager 			manager = new IdcClientManager();
-		IdcClient 					idcClient = manager.createClient( contentServerFullUrl );
+	private static final	String	BULK_PARALLELISM_PROPERTY = "waggle.server.docsintegration.bulk.parallelism";
+	private static final	int		DEFAULT_BULK_PARALLELISM = 8;
 
-		if ( sLogger.isDebugEnabled() )
-		{
-			sLogger.debug( "Created IDC client instance." );
-		}
+	private static final	int		SITES_ACCESS = 1;
+	private static final	int		SITES_DELETE = 2;
 
-		IdcClientConfig				idcClientConfig	= idcClient.getConfig();
-		idcClientConfig.setSocketTimeout( 300000 );
+	/**
+	 * Content Server did not say what the access is. Treated as no access, and not cached.
+	 */
+	private static final	int		SITES_UNKNOWN = -1;
 
-		boolean 					proxyIsSet = setProxyIfEnabled( idcClientConfig );
+	private static final	String	SITES_ACCESS_NEGATIVE_TTL_PROPERTY = "waggle.server.docsintegration.cache.sites.access.negative.ttl.ms";
+	private static final	long	DEFAULT_SITES_ACCESS_NEGATIVE_TTL = 10000L;
 
-		if ( !proxyIsSet )
-		{
-			idcClient.getConfig().setProperty( "http.library", "apache4" );
-		}
+	private static final	XIdcCache<String, Integer>	sSitesAccessCache = new XIdcCache<>( "sites.access", 10000, 60000L );
 
-		return idcClient;
-	}
+	private static final	XIdcCache<String, XObjectID>	sUserIDCache = new XIdcCache<>( "user.id", 10000, 300000L );
 
-	private static boolean setProxyIfEnabled( IdcClientConfig idcClientConfig )
-	{
-		// Assume the proxy is not set
-		boolean		proxyIsSet = false;
-		boolean		useProxy = XPropertiesManager.getInstance().getBoolean( "waggle.server.docsintegration.use.proxy", false );
+	private static final	String	USER_ID_NEGATIVE_TTL_PROPERTY = "waggle.server.docsintegration.cache.user.id.negative.ttl.ms";
+	private static final	long	DEFAULT_USER_ID_NEGATIVE_TTL = 10000L;
 
-		if ( useProxy && ( idcClientConfig instanceof IdcHttpClientConfig ) )
-		{
-			if ( sLogger.isDebugEnabled() )
-			{
-				sLogger.debug( "Checking if Oracle Documents proxy is enabled." );
-			}
+	private static final	String	GROUP_MEMBERS_CHUNK_SIZE_PROPERTY = "waggle.server.docsintegration.group.members.chunk.size";
+	private static final	int		DEFAULT_GROUP_MEMBERS_CHUNK_SIZE = 1000;
 
-			try
-			{
-				if ( XString.isNotBlank( XHTTPProxy.getProxyHost() )
-					 && ( XString.isNotBlank( String.valueOf( XHTTPProxy.getProxyPort() ) ) ) )
-				{
-					IdcHttpClientConfig httpClientConfig = (IdcHttpClientConfig) idcClientConfig;
-					httpClientConfig.setHttpLibrary( HttpLibrary.httpurlconnection );
+	private static final	String	GROUP_MEMBERS_ACTION_CHUNK_SIZE_PROPERTY = "waggle.server.docsintegration.group.members.action.chunk.size";
+	private static final	int		DEFAULT_GROUP_MEMBERS_ACTION_CHUNK_SIZE = 500;
+	private static final	String	GROUP_MEMBERS_ACTION_PARALLELISM_PROPERTY = "waggle.server.docsintegration.group.members.action.parallelism";
+	private static final	int		DEFAULT_GROUP_MEMBERS_ACTION_PARALLELISM = 4;
 
-					if ( sLogger.isDebugEnabled() )
-					{
-						sLogger.debug( "Setting Proxy in IdC Client: {0}:{1}", XHTTPProxy.getProxyHost(),
-									   XHTTPProxy.getProxyPort() );
-					}
+	private static final	String	SEARCH_PREFETCH_ENABLED_PROPERTY = "waggle.server.docsintegration.search.prefetch.enabled";
 
-					httpClientConfig.setProxyHost( XHTTPProxy.getProxyHost() );
-					httpClientConfig.setProxyPort( XHTTPProxy.getProxyPort() );
-					httpClientConfig.setUseSystemProxy( false );
-					proxyIsSet = true;
-				}
-			}
-			catch ( XRuntimeException xre )
-			{
-				// Explicitly set this to false
-				sLogger.warning( "Unable to parse Oracle Documents proxy settings, setting to default.", xre );
-				proxyIsSet = false;
-			}
-		}
+	private static final	String	SEARCH_FANOUT_ENABLED_PROPERTY = "waggle.server.docsintegration.search.fanout.enabled";
+	private static final	String	SEARCH_FANOUT_SHARD_SIZE_PROPERTY = "waggle.server.docsintegration.search.fanout.shard.size";
+	private static final	int		DEFAULT_SEARCH_FANOUT_SHARD_SIZE = 25;
+	private static final	String	SEARCH_FANOUT_MAX_SHARDS_PROPERTY = "waggle.server.docsintegration.search.fanout.max.shards";
+	private static final	int		DEFAULT_SEARCH_FANOUT_MAX_SHARDS = 8;
+	private static final	String	SEARCH_FANOUT_MAX_ROWS_PROPERTY = "waggle.server.docsintegration.search.fanout.max.rows";
+	private static final	int		DEFAULT_SEARCH_FANOUT_MAX_ROWS = 500;
+
+	private static final	XIdcCache<String, List<DataObject>>	sSearchCache = new XIdcCache<>( "search", 500, 30000L );
 
-		return proxyIsSet;
+	private XIdcUtils()
+	{
+	}
+
+	/**
+	 * Get the IDC client object for invoking services in Content Server.
+	 * The client is shared and is only rebuilt when the Content Server URL or proxy configuration changes.
+	 * Requests sent through execute() use the client matching the socket timeout of their service.
+	 *
+	 * @return The IdcClient object.
+	 *
+	 * @throws IdcClientException Exception during client creation.
+	 */
+	private static IdcClient getIdcClient() throws IdcClientException
+	{
+		return XIdcClientRegistry.getClient();
 	}
 
 	/**
 	 * Get the APP ID user name and password credentials as an IdcContext object.
+	 * The credentials are cached and only re-read from the credential store when they expire or are rotated.
 	 *
 	 * @return The IdcContext instance.
 	 */
 	private static IdcContext getIdcContext()
 	{
-		XUsernamePasswordCredential credentials = XIdentityUtil.getIdentityUserCredential();
-
-		XValidate.argumentNotNull( "Credentials", credentials );
-
-		String 						osnAppIdUser = credentials.getName();
-		String 						osnAppIdPassword = credentials.getPassword().toClearTextString();
-
-		// TODO: remove this - Devang
-		//String osnAppIdUser = "swebcli.INTEGRATION_USER";
-		//String osnAppIdPassword = "welcome1";
-
-		XValidate.argumentNotEmpty( "ApplicationID", osnAppIdUser );
-		XValidate.argumentNotEmpty( "Password", osnAppIdPassword );
-
-		if ( sLogger.isDebugEnabled() )
-		{
-			sLogger.debug( "OSN App ID User: {0}", osnAppIdUser );
-		}
-
-		return new IdcContext( osnAppIdUser, osnAppIdPassword );
+		return XIdcCredentialCache.getIdcContext();
 	}
 
 	/**
@@ -318,6 +298,10 @@ public final class XIdcUtils
 
 	/**
 	 * Executes the IDC request, checks response to be of binder type and returns it.
+	 * If Content Server rejects the cached APP ID credentials, they are re-read and the request is sent once more.
+	 * The request is guarded by the per-service circuit breaker and bulkhead, so it fails fast with the given
+	 * exception resource ID while Content Server is unhealthy.
+	 * Identical concurrent read requests share one round trip and its response.
 	 *
 	 * @param idcClient 			The IdcClient instance.
 	 * @param userContext 			The IdcContext instance.
@@ -332,31 +316,91 @@ public final class XIdcUtils
 		final DataBinder 	binder,
 		final String 		exceptionResourceId,
 		final Object...		exceptionArguments ) throws IdcClientException
+	{
+		if ( ( binder != null ) && XIdcRequestCoalescer.isCoalescable( binder ) )
+		{
+			return XIdcRequestCoalescer.execute( binder, () -> executeGuarded( idcClient, userContext, binder, exceptionResourceId, exceptionArguments ) );
+		}
+
+		return executeGuarded( idcClient, userContext, binder, exceptionResourceId, exceptionArguments );
+	}
+
+	/**
+	 * Executes the IDC request within the circuit breaker and bulkhead of its service.
+	 *
+	 * @param idcClient 			The IdcClient instance.
+	 * @param userContext 			The IdcContext instance.
+	 * @param binder				The DataBinder instance.
+	 * @param exceptionResourceId 	The exception resource ID. (Useful for logging purpose).
+	 * @return						The ServiceResponse object on invoking the IDC request.
+	 * @throws IdcClientException
+	 */
+	private static ServiceResponse executeGuarded(
+		final IdcClient 	idcClient,
+		final IdcContext 	userContext,
+		final DataBinder 	binder,
+		final String 		exceptionResourceId,
+		final Object...		exceptionArguments ) throws IdcClientException
 	{
 		ServiceResponse response = null;
 
 		if ( ( idcClient != null ) && ( userContext != null ) && ( binder != null ) )
 		{
-			response = idcClient.sendRequest( userContext, binder );
+			// the validation is a request of its own, it is not part of the service's permit or latency
 
-			if ( ( response == null ) || ( !response.getResponseType().equals( ServiceResponse.ResponseType.BINDER ) ) )
+			IdcClient					sendClient = validateConnectionIfInactive( idcClient, userContext );
+			XIdcCircuitBreaker.Permit	permit = XIdcCircuitBreaker.acquire( binder.getLocal( "IdcService" ) );
+			boolean						success = false;
+
+			if ( permit == null )
 			{
-				if ( response == null )
+				throw new XRuntimeException( exceptionResourceId, exceptionArguments );
+			}
+
+			try
+			{
+				try
 				{
-					sLogger.error( "IDC request for Service - {0} returned null ServiceResponse." );
+					response = sendWithRetry( permit, sendClient, userContext, binder, exceptionResourceId, exceptionArguments );
 				}
-				else
+				catch ( IdcClientException ex )
 				{
-					sLogger.error( "IDC request for Service - {0} returned a ServiceResponse of type: {1}. Expected BINDER type.",
-								   binder.getLocal( "IdcService" ), response.getResponseType().name() );
+					if ( !XIdcCredentialCache.isAuthenticationFailure( ex ) )
+					{
+						throw ex;
+					}
+
+					XIdcCredentialCache.credentialsRotated();
+
+					// a request that changes content is not sent twice, the next one uses the new credentials
+
+					if ( !XIdcRetryPolicy.isRetryable( binder.getLocal( "IdcService" ), binder ) )
+					{
+						sLogger.warning( "Content Server rejected the APP ID credentials for Service - {0}. Credentials will be re-read.",
+										 binder.getLocal( "IdcService" ), ex );
+
+						throw ex;
+					}
+
+					sLogger.warning( "Content Server rejected the APP ID credentials for Service - {0}. Re-reading credentials and retrying once.",
+									 binder.getLocal( "IdcService" ), ex );
+
+					response = sendRequest( sendClient, getIdcContext(), binder, exceptionResourceId, exceptionArguments );
 				}
 
-				throw new XRuntimeException( exceptionResourceId, exceptionArguments );
+				success = true;
 			}
+			catch ( ServiceException ex )
+			{
+				// Content Server answered and rejected the request itself, so it is healthy.
 
-			if ( sLogger.isDebugEnabled() )
+				success = true;
+
+				throw ex;
+			}
+			finally
 			{
-				sLogger.debug( "Response from Content Server: {0}", response.getResponseAsBinder().toString() );
+				permit.complete( success );
 			}
 		}
 		else
@@ -371,121 +415,410 @@ public final class XIdcUtils
 	}
 
 	/**
-	 * Updates the Avatar of the user in Content Server. Uses the UPDATE_AVATAR service.
+	 * Sends the IDC request, retrying transport failures of idempotent services with exponential backoff and jitter
+	 * (see XIdcRetryPolicy). The bulkhead slot of the permit is given back while backing off.
 	 *
-	 * @param contentStream The image input stream.
-	 * @param fileName The file name with extension.
-	 * @param contentLength Length of the file in bytes.
-	 * @param contentType The mime type.
+	 * @param permit 				The circuit breaker permit of the request.
+	 * @param idcClient 			The IdcClient instance.
+	 * @param userContext 			The IdcContext instance.
+	 * @param binder				The DataBinder instance.
+	 * @param exceptionResourceId 	The exception resource ID. (Useful for logging purpose).
+	 * @return						The ServiceResponse object on invoking the IDC request.
+	 * @throws IdcClientException
 	 */
-	public static void updateAvatar(
-		final XAPIInputStream	contentStream,
-		final String 			fileName,
-		final long 				contentLength,
-		final String 			contentType )
+	private static ServiceResponse sendWithRetry(
+		final XIdcCircuitBreaker.Permit 	permit,
+		final IdcClient 	idcClient,
+		final IdcContext 	userContext,
+		final DataBinder 	binder,
+		final String 		exceptionResourceId,
+		final Object...		exceptionArguments ) throws IdcClientException
 	{
-		ServiceResponse 	response = null;
+		String		serviceName = binder.getLocal( "IdcService" );
+		boolean		retryable = XIdcRetryPolicy.isRetryable( serviceName, binder );
+		int			attempt = 0;
 
-		try
+		XIdcRetryPolicy.requestStarted();
+
+		while ( true )
 		{
-			IdcClient 		idcClient = getIdcClient();
-			IdcContext 		userContext = getIdcContext();
-			DataBinder 		binder = getDataBinder( idcClient, SERVICE_AVATAR_UPDATE );
+			try
+			{
+				return sendRequest( idcClient, userContext, binder, exceptionResourceId, exceptionArguments );
+			}
+			catch ( IdcClientException ex )
+			{
+				attempt++;
 
-			binder.addFile( SERVICE_AVATAR_PARAM, new TransferFile( contentStream, fileName, contentLength, contentType ) );
+				if ( !retryable || !XIdcRetryPolicy.shouldRetry( ex, attempt ) )
+				{
+					throw ex;
+				}
 
-			// We need to set NOTIFY_OSN_PARAM flag to "0" (false) so that DoCS does not call OSN back for updating user avatar.
+				long	delay = XIdcRetryPolicy.getBackoff( attempt );
 
-			binder.putLocal( NOTIFY_OSN_PARAM, "0" );
+				sLogger.warning( "IDC request for Service - {0} failed on attempt {1}. Retrying in {2} ms.", serviceName, attempt, delay, ex );
 
-			if ( sLogger.isDebugEnabled() )
-			{
-				sLogger.debug( "Binder object in the IDC request: {0}", binder.toString() );
-			}
+				XIdcMetrics.recordRetry( serviceName );
 
-			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotUpdateProfilePicCS" );
-		}
-		catch ( Throwable ex )
-		{
-			sLogger.error( "Exception in invoking {0} service", SERVICE_AVATAR_UPDATE, ex );
+				// the bulkhead slot is not held while backing off, other calls of the service may use it meanwhile
 
-			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotUpdateProfilePicCS", ex );
-		}
-		finally
-		{
-			if ( response != null )
-			{
-				response.close();
+				permit.suspend();
+
+				try
+				{
+					Thread.sleep( delay );
+				}
+				catch ( InterruptedException ie )
+				{
+					Thread.currentThread().interrupt();
+
+					throw ex;
+				}
+
+				if ( !permit.resume() )
+				{
+					sLogger.warning( "No bulkhead slot for the retry of IDC Service - {0}. Giving up.", serviceName );
+
+					throw ex;
+				}
 			}
 		}
 	}
 
 	/**
-	 * Deletes / Removes the avatar for the logged in user. Uses the DELETE_USER_AVATAR IDC Service.
+	 * Sends one IDC request over a pooled connection and checks response to be of binder type.
+	 * The request is sent with the socket timeout of its service (see XIdcTimeoutPolicy).
+	 * The latency, payload sizes and outcome of the request are recorded in the per-service metrics.
+	 *
+	 * @param idcClient 			The IdcClient instance.
+	 * @param userContext 			The IdcContext instance.
+	 * @param binder				The DataBinder instance.
+	 * @param exceptionResourceId 	The exception resource ID. (Useful for logging purpose).
+	 * @return						The ServiceResponse object on invoking the IDC request.
+	 * @throws IdcClientException
 	 */
-	public static void deleteAvatar()
+	private static ServiceResponse sendRequest(
+		final IdcClient 	idcClient,
+		final IdcContext 	userContext,
+		final DataBinder 	binder,
+		final String 		exceptionResourceId,
+		final Object...		exceptionArguments ) throws IdcClientException
 	{
-		ServiceResponse 	response = null;
+		ServiceResponse 			response;
+		String						serviceName = binder.getLocal( "IdcService" );
+		long						startTime = System.currentTimeMillis();
+
+		XIdcConnectionPool.requestStarted();
 
 		try
 		{
-			IdcClient 		idcClient = getIdcClient();
-			IdcContext 		userContext = getIdcContext();
-			DataBinder 		binder = getDataBinder( idcClient, SERVICE_AVATAR_DELETE );
+			IdcClient		sendClient = getIdcClientForService( idcClient, serviceName );
 
-			if ( sLogger.isDebugEnabled() )
+			response = sendClient.sendRequest( userContext, binder );
+
+			if ( ( response == null ) || ( !response.getResponseType().equals( ServiceResponse.ResponseType.BINDER ) ) )
 			{
-				sLogger.debug( "Binder object in the IDC request: {0}", binder.toString() );
+				if ( response == null )
+				{
+					sLogger.error( "IDC request for Service - {0} returned null ServiceResponse.", serviceName );
+				}
+				else
+				{
+					sLogger.error( "IDC request for Service - {0} returned a ServiceResponse of type: {1}. Expected BINDER type.",
+								   serviceName, response.getResponseType().name() );
+
+					response.close();
+				}
+
+				throw new XRuntimeException( exceptionResourceId, exceptionArguments );
 			}
 
-			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotDeleteProfilePicCS" );
+			// Read the whole response so the connection goes back to the pool right away.
+
+			DataBinder		responseBinder = response.getResponseAsBinder();
+
+			XIdcMetrics.recordResponse( serviceName, System.currentTimeMillis() - startTime, binder, responseBinder );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Response from Content Server: {0}", responseBinder.toString() );
+			}
 		}
 		catch ( Throwable ex )
 		{
-			sLogger.error( "Exception in invoking {0} service", SERVICE_AVATAR_DELETE, ex );
+			XIdcMetrics.recordFailure( serviceName, System.currentTimeMillis() - startTime, binder, ex );
 
-			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotDeleteProfilePicCS", ex );
+			throw ex;
 		}
 		finally
 		{
-			if ( response != null )
-			{
-				response.close();
-			}
+			XIdcConnectionPool.requestFinished();
 		}
+
+		return response;
 	}
 
 	/**
-	 * Fetches the Hybrid / Shared Link from Content Server using CREATE_HYBRID_LINK IDC service.
+	 * Get the IDC client configured with the socket timeout of the given service.
 	 *
-	 * @param contentServerGUID 	The GUID of the document in Content Server.
-	 * @param conversationID 		The ID of the conversation that contains / will contain the document.
-	 * @return 						The String ID of the Hybrid Link. Clients will use this ID to create the URL.
+	 * @param idcClient 	The shared IdcClient instance, used for services with the default timeout.
+	 * @param serviceName 	The IdcService.
+	 * @return				The client to send the request with.
+	 * @throws IdcClientException
 	 */
-	public static String fetchHybridLink(
-		final String 	contentServerGUID,
-		final String 	conversationID )
+	private static IdcClient getIdcClientForService( final IdcClient idcClient, final String serviceName ) throws IdcClientException
 	{
-		ServiceResponse 	response = null;
-		String				retVal = null;
+		int		socketTimeout = XIdcTimeoutPolicy.getTimeout( serviceName );
+
+		if ( socketTimeout == XIdcClientRegistry.getDefaultSocketTimeout() )
+		{
+			return idcClient;
+		}
+
+		return XIdcClientRegistry.getClient( socketTimeout );
+	}
+
+	/**
+	 * Validates the pooled connections with a PING_SERVER request if they have been inactive for a while.
+	 * Only a transport (I/O) failure discards the clients, and a fresh one is returned; if Content Server answers,
+	 * even with an error, the connections work.
+	 *
+	 * @param idcClient 	The IdcClient instance.
+	 * @param userContext 	The IdcContext instance.
+	 * @return				The client to send the request with.
+	 * @throws IdcClientException
+	 */
+	private static IdcClient validateConnectionIfInactive( final IdcClient idcClient, final IdcContext userContext ) throws IdcClientException
+	{
+		if ( !XIdcConnectionPool.claimValidation() )
+		{
+			return idcClient;
+		}
+
+		ServiceResponse		response = null;
 
 		try
 		{
-			IdcClient 		idcClient = getIdcClient();
-			IdcContext 		userContext = getIdcContext();
-			DataBinder 		binder = getDataBinder( idcClient, SERVICE_HYBRID_LINK );
+			DataBinder		binder = idcClient.createBinder();
 
-			binder.putLocal( "item", ITEM_PREFIX + contentServerGUID );
-			binder.putLocal( "dAssignedUsers", ASSIGNED_USERS_PREFIX + conversationID );
+			binder.putLocal( "IdcService", SERVICE_PING_SERVER );
 
-			if ( sLogger.isDebugEnabled() )
+			response = getIdcClientForService( idcClient, SERVICE_PING_SERVER ).sendRequest( userContext, binder );
+			response.getResponseAsBinder();
+
+			return idcClient;
+		}
+		catch ( ServiceException ex )
+		{
+			return idcClient;
+		}
+		catch ( IdcClientException ex )
+		{
+			if ( !isTransportFailure( ex ) )
 			{
-				sLogger.debug( "Binder object in the IDC request for SERVICE_HYBRID_LINK: {0}", binder.toString() );
+				sLogger.warning( "Validation of inactive Content Server connections failed. Keeping IDC client.", ex );
+
+				return idcClient;
 			}
 
-			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotFetchHybridLink" );
+			XIdcConnectionPool.validationFailed();
 
-			DataBinder respBinder = response.getResponseAsBinder();
+			sLogger.warning( "Validation of inactive Content Server connections failed. Rebuilding IDC client.", ex );
+
+			XIdcClientRegistry.invalidate();
+
+			return getIdcClient();
+		}
+		finally
+		{
+			if ( response != null )
+			{
+				response.close();
+			}
+		}
+	}
+
+	private static boolean isTransportFailure( Throwable throwable )
+	{
+		Throwable	cause = throwable;
+
+		while ( cause != null )
+		{
+			if ( cause instanceof IOException )
+			{
+				return true;
+			}
+
+			cause = ( cause.getCause() == cause ) ? null : cause.getCause();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Get the statistics of the Content Server connection pool, for monitoring.
+	 *
+	 * @return The pool statistics.
+	 */
+	public static XIdcConnectionPoolStatsStruct getConnectionPoolStatistics()
+	{
+		return XIdcConnectionPool.getStatistics( XIdcClientRegistry.getClientCount() );
+	}
+
+	/**
+	 * Get the request metrics of every IDC service called so far, for monitoring.
+	 *
+	 * @return The per-service metrics, ordered by service name.
+	 */
+	public static List<XIdcServiceMetricsStruct> getServiceMetrics()
+	{
+		return XIdcMetrics.getMetrics();
+	}
+
+	/**
+	 * Exports the IDC request metrics in the Prometheus text format.
+	 *
+	 * @return The metrics text.
+	 */
+	public static String exportServiceMetrics()
+	{
+		return XIdcMetrics.export();
+	}
+
+	/**
+	 * Get the state (CLOSED, OPEN or HALF_OPEN) of the circuit breaker of every IDC service called so far, for monitoring.
+	 *
+	 * @return The circuit states by service name.
+	 */
+	public static Map<String, String> getCircuitBreakerStates()
+	{
+		Map<String, String>		retval = new TreeMap<>();
+
+		for ( Map.Entry<String, XIdcCircuitBreaker.State> entry : XIdcCircuitBreaker.getStates().entrySet() )
+		{
+			retval.put( entry.getKey(), entry.getValue().name() );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Updates the Avatar of the user in Content Server. Uses the UPDATE_AVATAR service.
+	 *
+	 * @param contentStream The image input stream.
+	 * @param fileName The file name with extension.
+	 * @param contentLength Length of the file in bytes.
+	 * @param contentType The mime type.
+	 */
+	public static void updateAvatar(
+		final XAPIInputStream	contentStream,
+		final String 			fileName,
+		final long 				contentLength,
+		final String 			contentType )
+	{
+		ServiceResponse 	response = null;
+
+		try
+		{
+			IdcClient 		idcClient = getIdcClient();
+			IdcContext 		userContext = getIdcContext();
+			DataBinder 		binder = getDataBinder( idcClient, SERVICE_AVATAR_UPDATE );
+
+			binder.addFile( SERVICE_AVATAR_PARAM, new TransferFile( contentStream, fileName, contentLength, contentType ) );
+
+			// We need to set NOTIFY_OSN_PARAM flag to "0" (false) so that DoCS does not call OSN back for updating user avatar.
+
+			binder.putLocal( NOTIFY_OSN_PARAM, "0" );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Binder object in the IDC request: {0}", binder.toString() );
+			}
+
+			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotUpdateProfilePicCS" );
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.error( "Exception in invoking {0} service", SERVICE_AVATAR_UPDATE, ex );
+
+			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotUpdateProfilePicCS", ex );
+		}
+		finally
+		{
+			if ( response != null )
+			{
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes / Removes the avatar for the logged in user. Uses the DELETE_USER_AVATAR IDC Service.
+	 */
+	public static void deleteAvatar()
+	{
+		ServiceResponse 	response = null;
+
+		try
+		{
+			IdcClient 		idcClient = getIdcClient();
+			IdcContext 		userContext = getIdcContext();
+			DataBinder 		binder = getDataBinder( idcClient, SERVICE_AVATAR_DELETE );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Binder object in the IDC request: {0}", binder.toString() );
+			}
+
+			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotDeleteProfilePicCS" );
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.error( "Exception in invoking {0} service", SERVICE_AVATAR_DELETE, ex );
+
+			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotDeleteProfilePicCS", ex );
+		}
+		finally
+		{
+			if ( response != null )
+			{
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Fetches the Hybrid / Shared Link from Content Server using CREATE_HYBRID_LINK IDC service.
+	 *
+	 * @param contentServerGUID 	The GUID of the document in Content Server.
+	 * @param conversationID 		The ID of the conversation that contains / will contain the document.
+	 * @return 						The String ID of the Hybrid Link. Clients will use this ID to create the URL.
+	 */
+	public static String fetchHybridLink(
+		final String 	contentServerGUID,
+		final String 	conversationID )
+	{
+		ServiceResponse 	response = null;
+		String				retVal = null;
+
+		try
+		{
+			IdcClient 		idcClient = getIdcClient();
+			IdcContext 		userContext = getIdcContext();
+			DataBinder 		binder = getDataBinder( idcClient, SERVICE_HYBRID_LINK );
+
+			binder.putLocal( "item", ITEM_PREFIX + contentServerGUID );
+			binder.putLocal( "dAssignedUsers", ASSIGNED_USERS_PREFIX + conversationID );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Binder object in the IDC request for SERVICE_HYBRID_LINK: {0}", binder.toString() );
+			}
+
+			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotFetchHybridLink" );
+
+			DataBinder respBinder = response.getResponseAsBinder();
 
 			if ( respBinder.getLocalData() != null )
 			{
@@ -534,6 +867,9 @@ public final class XIdcUtils
 
 	/**
 	 * Checks the access of specified user for the site by using content server's service SCS_CHECK_SITE_ACCESS_AND_ROLE.
+	 * Decisions are cached per user and sites folder until they expire or {@link #sitesAccessChanged(String)} is called.
+	 * A denial is only cached for waggle.server.docsintegration.cache.sites.access.negative.ttl.ms, so access granted
+	 * in Content Server shows quickly.
 	 *
 	 * @param sitesFolderGUID, ID of the sites folder for which the access to be checked.
 	 * @param userObject, User whose access to be checked.
@@ -543,9 +879,77 @@ public final class XIdcUtils
 	public static XHybridLinkPermissions checkSitesAccess(
 		final String 		sitesFolderGUID,
 		final XUserObject	userObject )
+	{
+		XUserObject					currentUserObject = ( userObject != null ) ? userObject : XSessionManager.getUserObject();
+		String						key = ( currentUserObject != null ) ? currentUserObject.getName() + '\n' + stripArtifactPrefix( sitesFolderGUID ) : null;
+		XIdcCache.Entry<Integer>	entry = ( key != null ) ? sSitesAccessCache.get( key ) : null;
+		int							permissions;
+
+		if ( entry != null )
+		{
+			permissions = entry.getValue();
+		}
+		else
+		{
+			long		stamp = sSitesAccessCache.getStamp();
+
+			permissions = loadSitesAccess( sitesFolderGUID, userObject );
+
+			if ( permissions == SITES_UNKNOWN )
+			{
+				permissions = 0;
+			}
+			else if ( key != null )
+			{
+				sSitesAccessCache.put( key, permissions, stamp,
+									   ( permissions == 0 ) ? XPropertiesManager.getInstance().getLong( SITES_ACCESS_NEGATIVE_TTL_PROPERTY, DEFAULT_SITES_ACCESS_NEGATIVE_TTL ) : sSitesAccessCache.getTTL() );
+			}
+		}
+
+		XHybridLinkPermissions		retval = new XHybridLinkPermissions();
+
+		if ( ( permissions & SITES_ACCESS ) != 0 )
+		{
+			retval.setAccess( true );
+		}
+
+		if ( ( permissions & SITES_DELETE ) != 0 )
+		{
+			retval.setDelete( true );
+
+			// Delete permission needs the user to have contributor role in SITES. If the user has this role, he can
+			// create / copy the hybrid links also.
+
+			retval.setCreate( true );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Discards the cached site access decisions of every user on a sites folder. Must be called when the members or
+	 * roles of the site change.
+	 *
+	 * @param sitesFolderGUID ID of the sites folder.
+	 */
+	public static void sitesAccessChanged( final String sitesFolderGUID )
+	{
+		final String	guid = '\n' + stripArtifactPrefix( sitesFolderGUID );
+
+		sSitesAccessCache.invalidateIf( key -> key.endsWith( guid ) );
+	}
+
+	/**
+	 * Asks Content Server for the access of the user to the site.
+	 *
+	 * @return The SITES_ACCESS and SITES_DELETE permission bits, or SITES_UNKNOWN if the response has no local data.
+	 */
+	private static int loadSitesAccess(
+		final String 		sitesFolderGUID,
+		final XUserObject	userObject )
 	{
 		ServiceResponse 		response = null;
-		XHybridLinkPermissions 	retval = new XHybridLinkPermissions();
+		int					 	retval = 0;
 
 		try
 		{
@@ -571,22 +975,19 @@ public final class XIdcUtils
 
 				if ( localData.getInteger( ACCESS_PERMISSION ) == 1 )
 				{
-					retval.setAccess( true );
+					retval |= SITES_ACCESS;
 				}
 
 				if ( localData.getInteger( DELETE_PERMISSION ) == 1 )
 				{
-					retval.setDelete( true );
-
-					// Delete permission needs the user to have contributor role in SITES. If the user has this role, he can
-					// create / copy the hybrid links also.
-
-					retval.setCreate( true );
+					retval |= SITES_DELETE;
 				}
 			}
 			else
 			{
 				sLogger.warning( "Call to the Content Server returned null local data. Could not retrieve the permission." );
+
+				retval = SITES_UNKNOWN;
 			}
 
 		}
@@ -604,53 +1005,420 @@ public final class XIdcUtils
 			}
 		}
 
-		return retval;
+		return retval;
+	}
+
+	/**
+	 * Carry out document and folder search in Content Server using RIDC protocol.
+	 *
+	 * @param filterInfo Search criteria.
+	 * @return Matching results.
+	 */
+	public static List<XSearchResultInfo> searchDocumentsAndFoldersInContentServer( XContentServerSearchFilterInfo filterInfo, final String sortField, final boolean isSearchShared )
+	{
+		List<XSearchResultInfo> searchResults = new ArrayList<>();
+
+		searchDocumentsAndFoldersInContentServer( filterInfo, sortField, isSearchShared, searchResults::add );
+
+		return searchResults;
+	}
+
+	/**
+	 * Carry out document and folder search in Content Server using RIDC protocol, handing each hit to the consumer
+	 * as soon as it is converted. Nothing is collected, so the caller can write the hits out incrementally.
+	 *
+	 * @param filterInfo Search criteria.
+	 * @param sortField The field to sort on, or null.
+	 * @param isSearchShared True to search shared items.
+	 * @param consumer Receives the matching results in order. Exceptions it throws are passed on as they are.
+	 * @return The number of results handed to the consumer.
+	 */
+	public static int searchDocumentsAndFoldersInContentServer( XContentServerSearchFilterInfo filterInfo, final String sortField, final boolean isSearchShared, Consumer<XSearchResultInfo> consumer )
+	{
+		int						count = 0;
+		String 					queryText = "<ftx>" + filterInfo.SearchString + "</ftx>";
+		String					folderList = null;
+
+		// Build a comma separated string of folderGUIDs to which the search should be limited.
+
+		if ( XCollections.isNotEmpty( filterInfo.FolderGUIDs ) )
+		{
+			StringBuilder 		builder = new StringBuilder();
+
+			for ( String folderGUID : filterInfo.FolderGUIDs )
+			{
+				if ( builder.length() > 0 )
+				{
+					builder.append( "," );
+				}
+
+				builder.append( FOLDER_PREFIX ).append( folderGUID );
+			}
+
+			folderList = builder.toString();
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Search query text: {0}", queryText );
+			sLogger.debug( "Sort Field: {0}", sortField );
+			sLogger.debug( "Invoking {0} on Content Server to carry out Federated Search.", CONTENT_SERVER_SEARCH_SERVICE );
+
+			if ( XString.isNotBlank( folderList ) )
+			{
+				sLogger.debug( "Limiting the search to folders {0}.", folderList );
+			}
+		}
+
+		SearchQuery				query = new SearchQuery( XSessionManager.getUserObject(), queryText, folderList, sortField, filterInfo.SortOrderDescending, isSearchShared );
+		List<DataObject>		rows = getSearchPage( query, filterInfo.FirstResult, filterInfo.NumResults );
+
+		if ( rows.isEmpty() )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "No search hits." );
+			}
+
+			return count;
+		}
+
+		// a full page usually means the user pages on, have the next page ready by then
+
+		if ( rows.size() >= filterInfo.NumResults )
+		{
+			prefetchSearchPage( query, filterInfo.FirstResult + filterInfo.NumResults, filterInfo.NumResults );
+		}
+
+		Map<String, XObjectID>	userIDs;
+
+		try
+		{
+			// the same few people create, own and modify most hits, resolve each login name once for the whole page
+
+			Set<String>			loginNames = new HashSet<>();
+
+			for ( DataObject dataObject : rows )
+			{
+				loginNames.add( dataObject.get( "fCreatorLoginName" ) );
+				loginNames.add( dataObject.get( "fOwnerLoginName" ) );
+				loginNames.add( dataObject.get( "fLastModifierLoginName" ) );
+			}
+
+			userIDs = resolveUserIDs( loginNames );
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.error( "Could not execute GET_SEARCH_RESULTS IDC service successfully.", ex );
+
+			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotPerformContentSearch", ex );
+		}
+
+		for ( DataObject dataObject : rows )
+		{
+			XSearchResultInfo		searchResultInfo;
+
+			try
+			{
+				searchResultInfo = toSearchResultInfo( dataObject, userIDs );
+			}
+			catch ( Throwable ex )
+			{
+				sLogger.error( "Could not execute GET_SEARCH_RESULTS IDC service successfully.", ex );
+
+				throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotPerformContentSearch", ex );
+			}
+
+			// failures of the consumer are the caller's own, they are not search failures
+
+			consumer.accept( searchResultInfo );
+
+			count++;
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Returning {0} search hits.", count );
+		}
+
+		return count;
+	}
+
+	/**
+	 * Drops every cached search result page, for example after a bulk content change.
+	 */
+	public static void clearSearchCache()
+	{
+		sSearchCache.invalidateAll();
+	}
+
+	/**
+	 * Get a page of search hits from the search cache, or from Content Server on a miss.
+	 *
+	 * @param query The search.
+	 * @param firstResult The first hit of the page, starting from 0.
+	 * @param numResults The page size.
+	 * @return The rows of the page, empty if there are no hits.
+	 */
+	private static List<DataObject> getSearchPage( SearchQuery query, int firstResult, int numResults )
+	{
+		String						pageKey = query.getPageKey( firstResult, numResults );
+
+		if ( pageKey == null )
+		{
+			return loadSearchPage( query, firstResult, numResults );
+		}
+
+		XIdcCache.Entry<List<DataObject>>	entry = sSearchCache.get( pageKey );
+
+		if ( entry != null )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Search page served from the search cache. First result: {0}", firstResult );
+			}
+
+			return entry.getValue();
+		}
+
+		long						stamp = sSearchCache.getStamp();
+		List<DataObject>			retval = loadSearchPage( query, firstResult, numResults );
+
+		sSearchCache.put( pageKey, retval, stamp );
+
+		return retval;
+	}
+
+	/**
+	 * Fetches a page of search hits into the search cache in the background, unless it is cached already. A page
+	 * requested while its prefetch is still running shares the prefetch round trip (see XIdcRequestCoalescer).
+	 *
+	 * @param query The search.
+	 * @param firstResult The first hit of the page, starting from 0.
+	 * @param numResults The page size.
+	 */
+	private static void prefetchSearchPage( final SearchQuery query, final int firstResult, final int numResults )
+	{
+		final String				pageKey = query.getPageKey( firstResult, numResults );
+
+		if ( ( pageKey == null ) ||
+			 !XPropertiesManager.getInstance().getBoolean( SEARCH_PREFETCH_ENABLED_PROPERTY, true ) ||
+			 ( sSearchCache.get( pageKey ) != null ) )
+		{
+			return;
+		}
+
+		final long					stamp = sSearchCache.getStamp();
+
+		// fanned out like the page it stands in for, the shards run one after another on the prefetch thread
+
+		XIdcExecutor.submit( "IDC search prefetch", () -> loadSearchPage( query, firstResult, numResults ) ).whenComplete( ( rows, failure ) ->
+		{
+			if ( failure == null )
+			{
+				sSearchCache.put( pageKey, rows, stamp );
+			}
+			else if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Could not prefetch search page. First result: {0}", firstResult, failure );
+			}
+		} );
+	}
+
+	/**
+	 * Loads a page of search hits from Content Server.
+	 *
+	 * A search limited to many folders is split into shards of folders when waggle.server.docsintegration.search.fanout.enabled
+	 * is set and the hits are sorted on a date or size field. The shards are searched concurrently, each for its first
+	 * firstResult + numResults hits, and merged on the sort field. The merge is only used when every shard came back in
+	 * the order the merge assumes and no two shards tie on the sort field within the page, since Content Server does not
+	 * say how it orders equal values; otherwise the page is fetched with a single request after all.
+	 *
+	 * @param query The search.
+	 * @param firstResult The first hit of the page, starting from 0.
+	 * @param numResults The page size.
+	 * @return The rows of the page, empty if there are no hits.
+	 */
+	private static List<DataObject> loadSearchPage( final SearchQuery query, int firstResult, int numResults )
+	{
+		final int					topCount = firstResult + numResults;
+		List<String>				shards = query.fFanOut ? getSearchShards( query, topCount ) : null;
+		Comparator<DataObject>		comparator = getSearchRowComparator( query.fSortField, query.fSortOrderDescending );
+
+		if ( ( shards == null ) || ( comparator == null ) )
+		{
+			return fetchSearchPage( query, query.fFolderList, firstResult, numResults );
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Searching {0} folder shards concurrently.", shards.size() );
+		}
+
+		List<XIdcExecutor.Fork<List<DataObject>>>	searches = new ArrayList<>( shards.size() );
+		List<DataObject>							hits = new ArrayList<>();
+		Map<DataObject, Integer>					hitShards = new IdentityHashMap<>();
+		Set<String>									seenItems = new HashSet<>();
+
+		for ( final String shard : shards )
+		{
+			searches.add( XIdcExecutor.fork( "IDC search shard", () -> fetchSearchPage( query, shard, 0, topCount ) ) );
+		}
+
+		try
+		{
+			for ( int i = 0; i < searches.size(); i++ )
+			{
+				DataObject			previous = null;
+
+				for ( DataObject dataObject : searches.get( i ).join() )
+				{
+					if ( XString.isBlank( dataObject.get( query.fSortField ) ) ||
+						 ( ( previous != null ) && ( comparator.compare( previous, dataObject ) > 0 ) ) )
+					{
+						return fetchUnmergedSearchPage( query, firstResult, numResults );
+					}
+
+					previous = dataObject;
+
+					// nested folders may be in different shards, count each hit once
+
+					if ( seenItems.add( dataObject.get( "fItemGUID" ) ) )
+					{
+						hits.add( dataObject );
+						hitShards.put( dataObject, i );
+					}
+				}
+			}
+		}
+		finally
+		{
+			for ( XIdcExecutor.Fork<List<DataObject>> search : searches )
+			{
+				search.cancel();
+			}
+		}
+
+		// stable, so the hits of a shard keep the order Content Server returned them in
+
+		hits.sort( comparator );
+
+		// one more than the page, a tie across its last hit decides what is on it as much as a tie within it
+
+		for ( int i = 1; i < Math.min( hits.size(), topCount + 1 ); i++ )
+		{
+			if ( ( comparator.compare( hits.get( i - 1 ), hits.get( i ) ) == 0 ) && !hitShards.get( hits.get( i - 1 ) ).equals( hitShards.get( hits.get( i ) ) ) )
+			{
+				return fetchUnmergedSearchPage( query, firstResult, numResults );
+			}
+		}
+
+		return ( firstResult < hits.size() ) ? new ArrayList<>( hits.subList( firstResult, Math.min( topCount, hits.size() ) ) ) : new ArrayList<>();
+	}
+
+	private static List<DataObject> fetchUnmergedSearchPage( SearchQuery query, int firstResult, int numResults )
+	{
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Search shards cannot be merged in the order of {0}. Searching with a single request.", query.fSortField );
+		}
+
+		return fetchSearchPage( query, query.fFolderList, firstResult, numResults );
+	}
+
+	/**
+	 * Splits the folder list of a search into shards.
+	 *
+	 * The shards together return up to topCount hits each, so a search is only split while that stays within
+	 * waggle.server.docsintegration.search.fanout.max.rows.
+	 *
+	 * @param query The search.
+	 * @param topCount The number of hits each shard would have to return.
+	 * @return The comma separated folder lists of the shards, or null if the search is not to be split.
+	 */
+	private static List<String> getSearchShards( SearchQuery query, int topCount )
+	{
+		if ( XString.isBlank( query.fFolderList ) )
+		{
+			return null;
+		}
+
+		String[]					folders = query.fFolderList.split( "," );
+		int							maxShards = Math.max( 1, XPropertiesManager.getInstance().getInt( SEARCH_FANOUT_MAX_SHARDS_PROPERTY, DEFAULT_SEARCH_FANOUT_MAX_SHARDS ) );
+		int							shardSize = Math.max( 1, XPropertiesManager.getInstance().getInt( SEARCH_FANOUT_SHARD_SIZE_PROPERTY, DEFAULT_SEARCH_FANOUT_SHARD_SIZE ) );
+		int							maxRows = XPropertiesManager.getInstance().getInt( SEARCH_FANOUT_MAX_ROWS_PROPERTY, DEFAULT_SEARCH_FANOUT_MAX_ROWS );
+
+		if ( folders.length <= shardSize )
+		{
+			return null;
+		}
+
+		// larger shards rather than more concurrent requests, or more rows, than allowed
+
+		maxShards = Math.min( maxShards, maxRows / Math.max( 1, topCount ) );
+
+		if ( maxShards < 2 )
+		{
+			return null;
+		}
+
+		shardSize = Math.max( shardSize, ( folders.length + maxShards - 1 ) / maxShards );
+
+		List<String>				retval = new ArrayList<>();
+
+		for ( int start = 0; start < folders.length; start += shardSize )
+		{
+			retval.add( String.join( ",", Arrays.asList( folders ).subList( start, Math.min( start + shardSize, folders.length ) ) ) );
+		}
+
+		return ( retval.size() > 1 ) ? retval : null;
 	}
 
 	/**
-	 * Carry out document and folder search in Content Server using RIDC protocol.
+	 * Get the order Content Server sorts the hits in for a sort field.
 	 *
-	 * @param filterInfo Search criteria.
-	 * @return Matching results.
+	 * Only dates and sizes compare the same way here as on Content Server. Names are left out, the collation Content
+	 * Server sorts them with is not known here.
+	 *
+	 * @param sortField The sort field.
+	 * @param descending True for descending order.
+	 * @return The order, or null if the hits cannot be ordered locally (for example by name or relevance).
 	 */
-	public static List<XSearchResultInfo> searchDocumentsAndFoldersInContentServer( XContentServerSearchFilterInfo filterInfo, final String sortField, final boolean isSearchShared )
+	private static Comparator<DataObject> getSearchRowComparator( String sortField, boolean descending )
 	{
-		List<XSearchResultInfo> searchResults = new ArrayList<>();
-		String 					queryText = "<ftx>" + filterInfo.SearchString + "</ftx>";
-		String					folderList = null;
+		Comparator<DataObject>		retval;
 
-		// Build a comma separated string of folderGUIDs to which the search should be limited.
-
-		if ( XCollections.isNotEmpty( filterInfo.FolderGUIDs ) )
+		if ( XString.isBlank( sortField ) )
 		{
-			StringBuilder 		builder = new StringBuilder();
-
-			for ( String folderGUID : filterInfo.FolderGUIDs )
-			{
-				if ( builder.length() > 0 )
-				{
-					builder.append( "," );
-				}
-
-				builder.append( FOLDER_PREFIX ).append( folderGUID );
-			}
-
-			folderList = builder.toString();
+			return null;
 		}
-
-		if ( sLogger.isDebugEnabled() )
+		else if ( sortField.equals( "fCreateDate" ) || sortField.equals( "fLastModifiedDate" ) )
 		{
-			sLogger.debug( "Search query text: {0}", queryText );
-			sLogger.debug( "Sort Field: {0}", sortField );
-			sLogger.debug( "Invoking {0} on Content Server to carry out Federated Search.", CONTENT_SERVER_SEARCH_SERVICE );
-
-			if ( XString.isNotBlank( folderList ) )
-			{
-				sLogger.debug( "Limiting the search to folders {0}.", folderList );
-			}
+			retval = Comparator.comparing( dataObject -> dataObject.getDate( sortField ), Comparator.nullsFirst( Comparator.<Date>naturalOrder() ) );
+		}
+		else if ( sortField.equals( "dFileSize" ) )
+		{
+			retval = Comparator.comparingInt( dataObject -> dataObject.getInteger( "dFileSize" ) );
 		}
+		else
+		{
+			return null;
+		}
+
+		return descending ? retval.reversed() : retval;
+	}
 
-		DataResultSet			resultSet;
+	/**
+	 * Runs GET_SEARCH_RESULTS for one page.
+	 *
+	 * @param query The search.
+	 * @param folderList The comma separated folders to limit the search to, or null.
+	 * @param firstResult The first hit of the page, starting from 0.
+	 * @param numResults The page size.
+	 * @return The rows of the page, empty if there are no hits.
+	 */
+	private static List<DataObject> fetchSearchPage( SearchQuery query, String folderList, int firstResult, int numResults )
+	{
 		ServiceResponse 		response = null;
 
 		try
@@ -661,7 +1429,7 @@ public final class XIdcUtils
 
 			// Required parameters for search in DoCS.
 
-			binder.putLocal( "QueryText", queryText );
+			binder.putLocal( "QueryText", query.fQueryText );
 
 			// Other optional parameters
 
@@ -670,26 +1438,26 @@ public final class XIdcUtils
 				binder.putLocal( "items", folderList );
 			}
 
-			if ( XString.isNotBlank( sortField ) )
+			if ( XString.isNotBlank( query.fSortField ) )
 			{
-				binder.putLocal( "SortField", sortField );
+				binder.putLocal( "SortField", query.fSortField );
 			}
 
-			if ( !filterInfo.SortOrderDescending )
+			if ( !query.fSortOrderDescending )
 			{
 				binder.putLocal( "SortOrder", "ASC" );
 			}
 
-			if ( isSearchShared )
+			if ( query.fSearchShared )
 			{
-				binder.putLocal( "IsSearchShared", Boolean.toString( isSearchShared ) );
+				binder.putLocal( "IsSearchShared", Boolean.toString( query.fSearchShared ) );
 			}
 
-			binder.putLocal( "ResultCount", Integer.toString( filterInfo.NumResults ) );
+			binder.putLocal( "ResultCount", Integer.toString( numResults ) );
 
 			// The Content Server API requires the StartRow to start from 1. FirstResult field in filterInfo starts from 0.
 
-			int 			startRow = filterInfo.FirstResult + 1;
+			int 			startRow = firstResult + 1;
 			binder.putLocal( "StartRow", Integer.toString( startRow ) );
 
 
@@ -702,16 +1470,11 @@ public final class XIdcUtils
 				sLogger.debug( "Response data binder: {0}", serverBinder.toString() );
 			}
 
-			resultSet = serverBinder.getResultSet( "SearchResults" );
+			DataResultSet		resultSet = serverBinder.getResultSet( "SearchResults" );
 
 			if ( resultSet == null )
 			{
-				if ( sLogger.isDebugEnabled() )
-				{
-					sLogger.debug( "No search hits." );
-				}
-
-				return searchResults;
+				return new ArrayList<>();
 			}
 
 			if ( sLogger.isDebugEnabled() )
@@ -719,107 +1482,216 @@ public final class XIdcUtils
 				sLogger.debug( "Search executed on Content Server. Result Count = {0}", resultSet.getRows().size() );
 			}
 
-			for ( DataObject dataObject : resultSet.getRows() )
+			return resultSet.getRows();
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.error( "Could not execute GET_SEARCH_RESULTS IDC service successfully.", ex );
+
+			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotPerformContentSearch", ex );
+		}
+		finally
+		{
+			if ( response != null )
 			{
-				XContentServerVersionInfo docsVersionInfo = new XContentServerVersionInfo();
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * The parameters of a search that do not change from page to page.
+	 */
+	private static final class SearchQuery
+	{
+		private final String		fUserName;
+		private final String		fQueryText;
+		private final String		fFolderList;
+		private final String		fSortField;
+		private final boolean		fSortOrderDescending;
+		private final boolean		fSearchShared;
+		private final boolean		fFanOut;
+
+		private SearchQuery( XUserObject userObject, String queryText, String folderList, String sortField, boolean sortOrderDescending, boolean searchShared )
+		{
+			fUserName = ( userObject != null ) ? userObject.getName() : null;
+			fQueryText = queryText;
+			fFolderList = folderList;
+			fSortField = sortField;
+			fSortOrderDescending = sortOrderDescending;
+			fSearchShared = searchShared;
 
-				docsVersionInfo.ItemGUID = dataObject.get( "fItemGUID" );
-				docsVersionInfo.Name = dataObject.get( "fItemName" );
-				docsVersionInfo.ObjectType = dataObject.get( "fItemType" );
-				docsVersionInfo.ParentGUID = dataObject.get( "fParentGUID" );
+			// decided once, so every page of the search, prefetched or not, is loaded the same way
 
-				docsVersionInfo.CreatedTimestamp = dataObject.getDate( "fCreateDate" );
-				docsVersionInfo.ModifiedTimestamp = dataObject.getDate( "fLastModifiedDate" );
+			fFanOut = XPropertiesManager.getInstance().getBoolean( SEARCH_FANOUT_ENABLED_PROPERTY, false );
+		}
 
-				String 		creatorLoginName = dataObject.get( "fCreatorLoginName" );
-				String 		ownerLoginName = dataObject.get( "fOwnerLoginName" );
-				String 		modifierLoginName = dataObject.get( "fLastModifierLoginName" );
+		/**
+		 * @return The search cache key of a page, or null if the search cannot be cached because there is no user.
+		 */
+		private String getPageKey( int firstResult, int numResults )
+		{
+			if ( fUserName == null )
+			{
+				return null;
+			}
 
-				docsVersionInfo.CreatedByUserID = XUserUtils.getUserIDFromName( creatorLoginName );
-				docsVersionInfo.OwnedByID = XUserUtils.getUserIDFromName( ownerLoginName );
-				docsVersionInfo.ModifiedByUserID = XUserUtils.getUserIDFromName( modifierLoginName );
+			return fUserName + '\n' + fQueryText + '\n' + fFolderList + '\n' + fSortField + '\n' + fSortOrderDescending + '\n' + fSearchShared + '\n' + fFanOut + '\n' + firstResult + '\n' + numResults;
+		}
+	}
 
-				docsVersionInfo.CreatedByUserName = dataObject.get( "fCreatorFullName" );
-				docsVersionInfo.OwnerUserName = dataObject.get( "fOwnerFullName" );
-				docsVersionInfo.ModifiedByUserName = dataObject.get( "fLastModifierFullName" );
+	/**
+	 * Converts a GET_SEARCH_RESULTS row to a search result.
+	 *
+	 * @param dataObject The row.
+	 * @param userIDs The user IDs by login name.
+	 * @return The search result.
+	 */
+	private static XSearchResultInfo toSearchResultInfo( DataObject dataObject, Map<String, XObjectID> userIDs )
+	{
+		XContentServerVersionInfo docsVersionInfo = new XContentServerVersionInfo();
 
-				docsVersionInfo.CreatorLoginName = dataObject.get( "fCreatorLoginName" );
-				docsVersionInfo.OwnerLoginName = dataObject.get( "fOwnerLoginName" );
-				docsVersionInfo.ModifierLoginName = dataObject.get( "fLastModifierLoginName" );
+		docsVersionInfo.ItemGUID = dataObject.get( "fItemGUID" );
+		docsVersionInfo.Name = dataObject.get( "fItemName" );
+		docsVersionInfo.ObjectType = dataObject.get( "fItemType" );
+		docsVersionInfo.ParentGUID = dataObject.get( "fParentGUID" );
 
-				docsVersionInfo.DocumentExtension = dataObject.get( "dExtension" );
-				docsVersionInfo.DocumentFormatType = dataObject.get( "dDocFormatType" );
-				docsVersionInfo.ContentLength = dataObject.getInteger( "dFileSize" );
-				docsVersionInfo.FolderDescription = dataObject.get( "fFolderDescription" );
+		docsVersionInfo.CreatedTimestamp = dataObject.getDate( "fCreateDate" );
+		docsVersionInfo.ModifiedTimestamp = dataObject.getDate( "fLastModifiedDate" );
 
-				docsVersionInfo.VersionNumber = dataObject.getInteger( "dRevLabel" );
+		String 		creatorLoginName = dataObject.get( "fCreatorLoginName" );
+		String 		ownerLoginName = dataObject.get( "fOwnerLoginName" );
+		String 		modifierLoginName = dataObject.get( "fLastModifierLoginName" );
 
-				String isThumbnailPresent = dataObject.get( "dRendition1" );
+		docsVersionInfo.CreatedByUserID = userIDs.get( creatorLoginName );
+		docsVersionInfo.OwnedByID = userIDs.get( ownerLoginName );
+		docsVersionInfo.ModifiedByUserID = userIDs.get( modifierLoginName );
 
-				if ( ( XString.isNotBlank( isThumbnailPresent ) ) && ( "P".equals( isThumbnailPresent ) ) )
-				{
-					docsVersionInfo.ThumbnailPresent = true;
-				}
+		docsVersionInfo.CreatedByUserName = dataObject.get( "fCreatorFullName" );
+		docsVersionInfo.OwnerUserName = dataObject.get( "fOwnerFullName" );
+		docsVersionInfo.ModifiedByUserName = dataObject.get( "fLastModifierFullName" );
 
-				// Content search API returns a field called dRenditions2 which when = "D" means the document has
-				// its preview stored in DoCS server. But as of now it is a bug on DoCS side as it does not
-				// return the value correctly. Returning true always for RenditionsSupported as of now the bug is resolved.
+		docsVersionInfo.CreatorLoginName = dataObject.get( "fCreatorLoginName" );
+		docsVersionInfo.OwnerLoginName = dataObject.get( "fOwnerLoginName" );
+		docsVersionInfo.ModifierLoginName = dataObject.get( "fLastModifierLoginName" );
 
-				docsVersionInfo.RenditionsSupported = true;
+		docsVersionInfo.DocumentExtension = dataObject.get( "dExtension" );
+		docsVersionInfo.DocumentFormatType = dataObject.get( "dDocFormatType" );
+		docsVersionInfo.ContentLength = dataObject.getInteger( "dFileSize" );
+		docsVersionInfo.FolderDescription = dataObject.get( "fFolderDescription" );
 
-				if ( sLogger.isDebugEnabled() )
-				{
-					sLogger.debug( "Search hit. Item info: " );
-					sLogger.debug( "-- Name: {0}", docsVersionInfo.Name );
-					sLogger.debug( "-- ObjectType: {0}", docsVersionInfo.ObjectType );
-					sLogger.debug( "-- GUID: {0}", docsVersionInfo.ItemGUID );
-					sLogger.debug( "-- Parent GUID: {0}", docsVersionInfo.ParentGUID );
-
-					sLogger.debug( "-- Creator Login Name: {0}", docsVersionInfo.CreatorLoginName );
-					sLogger.debug( "-- Owner Login Name: {0}", docsVersionInfo.OwnerLoginName );
-					sLogger.debug( "-- Modifier Login Name: {0}", docsVersionInfo.ModifierLoginName );
-
-					sLogger.debug( "-- Created by User ID: {0}", docsVersionInfo.CreatedByUserID );
-					sLogger.debug( "-- Owned by User ID: {0}", docsVersionInfo.OwnedByID );
-					sLogger.debug( "-- Modified by User ID: {0}", docsVersionInfo.ModifiedByUserID );
-
-					sLogger.debug( "-- Created Timestamp: {0}", docsVersionInfo.CreatedTimestamp );
-					sLogger.debug( "-- Modified Timestamp: {0}", docsVersionInfo.ModifiedTimestamp );
-
-					sLogger.debug( "-- Document Extension: {0}", docsVersionInfo.DocumentExtension );
-					sLogger.debug( "-- Document Format Type: {0}", docsVersionInfo.DocumentFormatType );
-					sLogger.debug( "-- Content Length: {0}", docsVersionInfo.ContentLength );
-					sLogger.debug( "-- Folder Description: {0}", docsVersionInfo.FolderDescription );
-					sLogger.debug( "-- Version Number: {0}", docsVersionInfo.VersionNumber );
-					sLogger.debug( "-- Thumbnail Present: {0}", docsVersionInfo.ThumbnailPresent );
-				}
+		docsVersionInfo.VersionNumber = dataObject.getInteger( "dRevLabel" );
 
-				XSearchResultInfo result = new XSearchResultInfo();
-				result.ObjectInfo = docsVersionInfo;
+		String isThumbnailPresent = dataObject.get( "dRendition1" );
 
-				searchResults.add( result );
-			}
+		if ( ( XString.isNotBlank( isThumbnailPresent ) ) && ( "P".equals( isThumbnailPresent ) ) )
+		{
+			docsVersionInfo.ThumbnailPresent = true;
 		}
-		catch ( Throwable ex )
+
+		// Content search API returns a field called dRenditions2 which when = "D" means the document has
+		// its preview stored in DoCS server. But as of now it is a bug on DoCS side as it does not
+		// return the value correctly. Returning true always for RenditionsSupported as of now the bug is resolved.
+
+		docsVersionInfo.RenditionsSupported = true;
+
+		if ( sLogger.isDebugEnabled() )
 		{
-			sLogger.error( "Could not execute GET_SEARCH_RESULTS IDC service successfully.", ex );
+			sLogger.debug( "Search hit. Item info: " );
+			sLogger.debug( "-- Name: {0}", docsVersionInfo.Name );
+			sLogger.debug( "-- ObjectType: {0}", docsVersionInfo.ObjectType );
+			sLogger.debug( "-- GUID: {0}", docsVersionInfo.ItemGUID );
+			sLogger.debug( "-- Parent GUID: {0}", docsVersionInfo.ParentGUID );
 
-			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotPerformContentSearch", ex );
+			sLogger.debug( "-- Creator Login Name: {0}", docsVersionInfo.CreatorLoginName );
+			sLogger.debug( "-- Owner Login Name: {0}", docsVersionInfo.OwnerLoginName );
+			sLogger.debug( "-- Modifier Login Name: {0}", docsVersionInfo.ModifierLoginName );
+
+			sLogger.debug( "-- Created by User ID: {0}", docsVersionInfo.CreatedByUserID );
+			sLogger.debug( "-- Owned by User ID: {0}", docsVersionInfo.OwnedByID );
+			sLogger.debug( "-- Modified by User ID: {0}", docsVersionInfo.ModifiedByUserID );
+
+			sLogger.debug( "-- Created Timestamp: {0}", docsVersionInfo.CreatedTimestamp );
+			sLogger.debug( "-- Modified Timestamp: {0}", docsVersionInfo.ModifiedTimestamp );
+
+			sLogger.debug( "-- Document Extension: {0}", docsVersionInfo.DocumentExtension );
+			sLogger.debug( "-- Document Format Type: {0}", docsVersionInfo.DocumentFormatType );
+			sLogger.debug( "-- Content Length: {0}", docsVersionInfo.ContentLength );
+			sLogger.debug( "-- Folder Description: {0}", docsVersionInfo.FolderDescription );
+			sLogger.debug( "-- Version Number: {0}", docsVersionInfo.VersionNumber );
+			sLogger.debug( "-- Thumbnail Present: {0}", docsVersionInfo.ThumbnailPresent );
 		}
-		finally
+
+		XSearchResultInfo result = new XSearchResultInfo();
+		result.ObjectInfo = docsVersionInfo;
+
+		return result;
+	}
+
+	/**
+	 * Resolves login names to OSN user IDs through the shared user ID cache. Each distinct name is looked up at most
+	 * once; names of unknown users are left out of the result and are cached for
+	 * waggle.server.docsintegration.cache.user.id.negative.ttl.ms only, so a user created with the name is soon seen.
+	 *
+	 * @param loginNames The login names, may contain duplicates and nulls.
+	 * @return The user IDs by login name.
+	 */
+	private static Map<String, XObjectID> resolveUserIDs( Collection<String> loginNames )
+	{
+		Map<String, XObjectID>		retval = new HashMap<>();
+		long						stamp = sUserIDCache.getStamp();
+
+		for ( String loginName : loginNames )
 		{
-			if ( response != null )
+			if ( XString.isBlank( loginName ) || retval.containsKey( loginName ) )
 			{
-				response.close();
+				continue;
+			}
+
+			XIdcCache.Entry<XObjectID>	entry = sUserIDCache.get( loginName );
+			XObjectID					userID;
+
+			if ( entry != null )
+			{
+				userID = entry.getValue();
+			}
+			else
+			{
+				userID = XUserUtils.getUserIDFromName( loginName );
+
+				if ( userID != null )
+				{
+					sUserIDCache.put( loginName, userID, stamp );
+				}
+				else
+				{
+					sUserIDCache.put( loginName, null, stamp, XPropertiesManager.getInstance().getLong( USER_ID_NEGATIVE_TTL_PROPERTY, DEFAULT_USER_ID_NEGATIVE_TTL ) );
+				}
+			}
+
+			if ( userID != null )
+			{
+				retval.put( loginName, userID );
 			}
 		}
 
 		if ( sLogger.isDebugEnabled() )
 		{
-			sLogger.debug( "Returning {0} search hits.", searchResults.size() );
+			sLogger.debug( "Resolved {0} of {1} login names to user IDs.", retval.size(), loginNames.size() );
 		}
 
-		return searchResults;
+		return retval;
+	}
+
+	/**
+	 * Drops the cached user ID of a login name, for example after the user was renamed or deleted. Called whenever a
+	 * login name coming from Content Server no longer matches a user.
+	 *
+	 * @param loginName The login name.
+	 */
+	public static void userLoginNameChanged( String loginName )
+	{
+		sUserIDCache.invalidate( loginName );
 	}
 
 	/**
@@ -907,6 +1779,12 @@ public final class XIdcUtils
 			throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotFindSitePostCreation" );
 		}
 
+		XIdcSiteIndex.siteCreated( getSiteIndexUserName(), false, siteName, retval );
+
+		// a denial may have been cached while the site did not exist yet
+
+		sitesAccessChanged( retval );
+
 		return retval;
 	}
 
@@ -1001,31 +1879,246 @@ public final class XIdcUtils
 		{
 			if ( response != null )
 			{
-				response.close();
+				response.close();
+			}
+		}
+
+		// an inactive site is not accessible to its members any more, and an active one is again
+
+		sitesAccessChanged( siteGUID );
+	}
+
+	/**
+	 * Get site GUID given its name.
+	 * The GUID is looked up in the local site index of the session user (see XIdcSiteIndex), which is filled by a full
+	 * crawl of SCS_BROWSE_SITES as that user and refreshed in the background once stale. Sites missing from the index are looked up with a
+	 * live scan, which also adds every site it sees to the index.
+	 *
+	 * @param siteName Site name.
+	 * @param isTemplate True if site is a template.
+	 * @return Template GUID.
+	 */
+	public static String getSiteGUID( String siteName, boolean isTemplate )
+	{
+		String					userName = getSiteIndexUserName();
+		boolean					populated = XIdcSiteIndex.isPopulated( userName, isTemplate );
+		boolean					crawled = false;
+
+		if ( XIdcSiteIndex.claimRefresh( userName, isTemplate ) )
+		{
+			if ( populated )
+			{
+				refreshSiteIndexInBackground( userName, isTemplate );
+			}
+			else
+			{
+				crawlSites( userName, isTemplate );
+				crawled = true;
+			}
+		}
+
+		String					retval = XIdcSiteIndex.get( userName, isTemplate, siteName );
+
+		if ( ( retval == null ) && !crawled )
+		{
+			Map<String, String>		seenSites = new HashMap<>();
+
+			retval = scanSites( isTemplate, siteName, seenSites );
+
+			XIdcSiteIndex.putAll( userName, isTemplate, seenSites );
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Empties the local site index, for example after sites were renamed or deleted in Content Server.
+	 * The next lookup crawls the sites again.
+	 */
+	public static void invalidateSiteIndex()
+	{
+		XIdcSiteIndex.invalidate();
+	}
+
+	/**
+	 * @return The user the site index of the session is kept for, the empty name if there is no session user.
+	 */
+	private static String getSiteIndexUserName()
+	{
+		XUserObject				userObject = XSessionManager.getUserObject();
+
+		return ( userObject != null ) ? userObject.getName() : "";
+	}
+
+	private static void crawlSites( final String userName, final boolean isTemplate )
+	{
+		try
+		{
+			Map<String, String>		sites = new HashMap<>();
+
+			scanSites( isTemplate, null, sites );
+
+			XIdcSiteIndex.replace( userName, isTemplate, sites );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Site index refreshed with {0} sites. Templates: {1}", sites.size(), isTemplate );
+			}
+		}
+		catch ( RuntimeException ex )
+		{
+			XIdcSiteIndex.refreshFailed( userName, isTemplate );
+
+			throw ex;
+		}
+	}
+
+	private static void refreshSiteIndexInBackground( final String userName, final boolean isTemplate )
+	{
+		XIdcExecutor.submit( "IDC site index refresh", () -> { crawlSites( userName, isTemplate ); return null; } ).whenComplete( ( result, failure ) ->
+		{
+			if ( failure != null )
+			{
+				XIdcSiteIndex.refreshFailed( userName, isTemplate );
+
+				sLogger.warning( "Could not refresh the site index. The current index is kept.", failure );
+			}
+		} );
+	}
+
+	/**
+	 * Browses the sites, collecting every site seen, until the named site is found or there are no more sites.
+	 *
+	 * @param isTemplate True to browse site templates.
+	 * @param siteName The site to stop at, or null to browse all sites.
+	 * @param seenSites Receives the name and GUID of every site seen.
+	 * @return The GUID of the named site, or null.
+	 */
+	private static String scanSites( final boolean isTemplate, final String siteName, final Map<String, String> seenSites )
+	{
+		final String[]			retval = new String[ 1 ];
+
+		browseSites( isTemplate, dataObject ->
+		{
+			seenSites.put( dataObject.get( "fFolderName" ), dataObject.get( "fFolderGUID" ) );
+
+			if ( dataObject.get( "fFolderName" ).equals( siteName ) )
+			{
+				retval[ 0 ] = dataObject.get( "fFolderGUID" );
+
+				return false;
+			}
+
+			return true;
+		} );
+
+		return retval[ 0 ];
+	}
+
+	/**
+	 * Streams every site to the consumer, fetching the SCS_BROWSE_SITES pages concurrently.
+	 *
+	 * Pages are requested in windows that double from one page up to waggle.server.docsintegration.site.crawl.parallelism
+	 * pages, so a small tenant still costs a single round trip. The pages of a window are delivered in order on the
+	 * calling thread. Each page starts where the previous one ended; if Content Server returns fewer rows than a page
+	 * was expected to hold, the rest of the window is dropped and browsing continues after the last row returned with
+	 * that smaller page stride. Browsing stops when Content Server reports no more sites, or as soon as the consumer
+	 * returns false.
+	 *
+	 * @param isTemplate True to browse site templates.
+	 * @param consumer Receives each site row; returns false to stop browsing.
+	 */
+	private static void browseSites( final boolean isTemplate, final Predicate<DataObject> consumer )
+	{
+		final int					pageSize = Math.max( DEFAULT_PAGE_SIZE, XPropertiesManager.getInstance().getInt( SITE_INDEX_PAGE_SIZE_PROPERTY, DEFAULT_SITE_INDEX_PAGE_SIZE ) );
+		int							parallelism = Math.max( 1, XPropertiesManager.getInstance().getInt( SITE_CRAWL_PARALLELISM_PROPERTY, DEFAULT_SITE_CRAWL_PARALLELISM ) );
+		int							windowSize = 1;
+		int							siteStartRow = 0;
+		int							stride = pageSize;
+
+		while ( true )
+		{
+			List<XIdcExecutor.Fork<SitesPage>>	window = new ArrayList<>( windowSize );
+
+			for ( int i = 0; i < windowSize; i++ )
+			{
+				final int			pageStartRow = siteStartRow + ( i * stride );
+
+				window.add( XIdcExecutor.fork( "IDC browseSites", () -> fetchSitesPage( isTemplate, pageStartRow, pageSize ) ) );
+			}
+
+			try
+			{
+				for ( XIdcExecutor.Fork<SitesPage> fork : window )
+				{
+					SitesPage		page = fork.join();
+
+					for ( DataObject dataObject : page.fSites )
+					{
+						if ( !consumer.test( dataObject ) )
+						{
+							return;
+						}
+					}
+
+					if ( !page.fHasMoreSites )
+					{
+						return;
+					}
+
+					if ( page.fSites.isEmpty() )
+					{
+						sLogger.warning( "SCS_BROWSE_SITES returned no sites at row {0} but reported more sites. Browsing stopped.", siteStartRow );
+
+						return;
+					}
+
+					siteStartRow += page.fSites.size();
+
+					if ( page.fSites.size() != stride )
+					{
+						// the following pages of the window were requested at the wrong rows
+
+						stride = page.fSites.size();
+
+						break;
+					}
+				}
+			}
+			finally
+			{
+				// pages past the end, past the site looked for, or at the wrong rows are not needed any more
+
+				for ( XIdcExecutor.Fork<SitesPage> fork : window )
+				{
+					fork.cancel();
+				}
 			}
+
+			windowSize = Math.min( parallelism, windowSize * 2 );
 		}
 	}
 
 	/**
-	 * Get site GUID given its name.
+	 * Fetches one page of SCS_BROWSE_SITES.
 	 *
-	 * @param siteName Site name.
-	 * @param isTemplate True if site is a template.
-	 * @return Template GUID.
+	 * @param isTemplate True to browse site templates.
+	 * @param siteStartRow The first row of the page.
+	 * @param pageSize The number of sites in a page.
+	 * @return The page.
 	 */
-	public static String getSiteGUID( String siteName, boolean isTemplate )
+	private static SitesPage fetchSitesPage( boolean isTemplate, int siteStartRow, int pageSize )
 	{
 		ServiceResponse 		response = null;
-		String					retval = null;
 
 		try
 		{
 			IdcClient 			idcClient = getIdcClient();
 			IdcContext 			userContext = getIdcContext();
 			DataBinder 			binder = getDataBinder( idcClient, SERVICE_SCS_BROWSE_SITES );
-			int					siteStartRow = 0;
 
-			binder.putLocal( "siteCount", Integer.toString( DEFAULT_PAGE_SIZE ) );
+			binder.putLocal( "siteCount", Integer.toString( pageSize ) );
+			binder.putLocal( "siteStartRow", Integer.toString( siteStartRow ) );
 
 			if ( isTemplate )
 			{
@@ -1041,53 +2134,35 @@ public final class XIdcUtils
 				sLogger.debug( "Binder object in the IDC request for SERVICE_SCS_BROWSE_SITES: {0}", binder.toString() );
 			}
 
-			boolean				hasMoreSites;
+			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.ErrorBrowsingSites" );
 
-			do
-			{
-				binder.putLocal( "siteStartRow", Integer.toString( siteStartRow ) );
+			DataBinder 			responseBinder = response.getResponseAsBinder();
 
-				response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.ErrorBrowsingSites" );
+			if ( responseBinder != null )
+			{
+				DataObject localData = responseBinder.getLocalData();
 
-				DataBinder 			responseBinder = response.getResponseAsBinder();
+				DataResultSet siteInfo = responseBinder.getResultSet( "SiteInfo" );
 
-				if ( responseBinder != null )
+				if ( siteInfo != null )
 				{
-					DataObject localData = responseBinder.getLocalData();
-
-					hasMoreSites = localData.getBoolean( "hasMoreSites", false );
-
-					DataResultSet siteInfo = responseBinder.getResultSet( "SiteInfo" );
-
-					if ( siteInfo != null )
-					{
-						List<DataObject> dataObjects = siteInfo.getRows();
-
-						for ( DataObject dataObject : dataObjects )
-						{
-							if ( dataObject.get( "fFolderName" ).equals( siteName ) )
-							{
-								retval = dataObject.get( "fFolderGUID" );
-							}
-						}
-					}
-					else
-					{
-						sLogger.warning( "Call to the Content Server returned null package info. Could not browse site templates." );
+					List<DataObject> dataObjects = siteInfo.getRows();
 
-						throw new XRuntimeException( "waggle.server.integration.docs.idc.ErrorBrowsingSites" );
-					}
+					return new SitesPage( dataObjects, localData.getBoolean( "hasMoreSites", false ) );
 				}
 				else
 				{
-					sLogger.warning( "Call to the Content Server returned response that resulted in a null data binder. Could not browse site templates." );
+					sLogger.warning( "Call to the Content Server returned null package info. Could not browse site templates." );
 
 					throw new XRuntimeException( "waggle.server.integration.docs.idc.ErrorBrowsingSites" );
 				}
+			}
+			else
+			{
+				sLogger.warning( "Call to the Content Server returned response that resulted in a null data binder. Could not browse site templates." );
 
-				siteStartRow += DEFAULT_PAGE_SIZE;
+				throw new XRuntimeException( "waggle.server.integration.docs.idc.ErrorBrowsingSites" );
 			}
-			while ( ( hasMoreSites ) && ( retval == null ) );
 		}
 		catch ( Throwable ex )
 		{
@@ -1102,8 +2177,18 @@ public final class XIdcUtils
 				response.close();
 			}
 		}
+	}
 
-		return retval;
+	private static final class SitesPage
+	{
+		private final List<DataObject>	fSites;
+		private final boolean			fHasMoreSites;
+
+		private SitesPage( List<DataObject> sites, boolean hasMoreSites )
+		{
+			fSites = sites;
+			fHasMoreSites = hasMoreSites;
+		}
 	}
 
 	/**
@@ -1961,9 +3046,36 @@ public final class XIdcUtils
 	 * @return Group members.
 	 */
 	public static List<XMemberInfo> viewGroupMembers( XUserObject userObject, XGroupObject groupObject )
+	{
+		List<XMemberInfo>		retval = new ArrayList<>();
+
+		return viewGroupMembers( userObject, groupObject, retval::addAll ) ? retval : null;
+	}
+
+	/**
+	 * View DoCS group members in chunks of waggle.server.docsintegration.group.members.chunk.size members.
+	 * Each chunk of member infos is built only when the previous one has been handed over, so a caller that does not
+	 * keep them never holds the infos of the whole group at once.
+	 *  Note that in the rare scenario where the member returned by docs is not present in social,
+	 * 	returned MemberInfo would just have the minimum details as obtained from docs.
+	 * 	Verify the returned info before using.
+	 *
+	 * @param userObject The user object.
+	 * @param groupObject The group object.
+	 * @param chunkConsumer Receives the group members, a chunk at a time. Exceptions it throws are passed on as they are.
+	 *
+	 * @return False if Content Server did not return the members.
+	 */
+	public static boolean viewGroupMembers( XUserObject userObject, final XGroupObject groupObject, Consumer<List<XMemberInfo>> chunkConsumer )
 	{
 		ServiceResponse 		response = null;
-		List<XMemberInfo>		retval = null;
+		List<DataObject> 		dataObjects = null;
+		Map<String, XConversationRole> privileges = null;
+
+		// view group privs can only be done by managers - so use group owner
+		// fetched while the members are, so the call costs one round trip rather than two
+
+		XIdcExecutor.Fork<Map<String, XConversationRole>>	privilegesLookup = XIdcExecutor.fork( "IDC viewGroupPrivileges", () -> viewGroupPrivileges( groupObject.getOwnerUserObject(), groupObject ) );
 
 		try
 		{
@@ -2002,87 +3114,8 @@ public final class XIdcUtils
 
 					if ( groupMembers != null )
 					{
-						List<DataObject> 	dataObjects = groupMembers.getRows();
-						retval = new ArrayList<>( dataObjects.size() );
-						// view group privs can only be done by managers - so use group owner
-						List<DoCSGroupPrivilegeStruct> privilegeStructs = viewGroupPrivileges( groupObject.getOwnerUserObject(), groupObject );
-
-						for ( DataObject memberDataObject : dataObjects )
-						{
-							String memberLoginIDName = memberDataObject.get( "dMemberIDLoginName" );
-							// user or group
-							String memberType = memberDataObject.get( "dMemberType" );
-
-							if ( sLogger.isDebugEnabled() )
-							{
-								sLogger.debug( "Group Member MemberLoginIDName {0}, Member type {1}.", memberLoginIDName, memberType );
-							}
-
-							if ( memberType.equals( "user" ) )
-							{
-								XUserObject memberUserObject = XUsersObjectManager.findUserObject( memberLoginIDName );
-								XUserInfo	userInfo;
-
-								if ( memberUserObject != null )
-								{
-									userInfo = memberUserObject.getInfo();
-									XConversationRole matchingRole = null;
-
-									for ( DoCSGroupPrivilegeStruct struct : privilegeStructs )
-									{
-										if ( sLogger.isDebugEnabled() )
-										{
-											sLogger.debug( "Group Member Privilege UserLoginIDName {0}, Role {1} MemberLoginIDName {2}.", struct.getUserIDLoginName(), struct.getMemberRole(), memberLoginIDName );
-										}
-
-										if ( struct.getUserIDLoginName().equals( memberLoginIDName ) )
-										{
-											matchingRole = struct.getMemberRole();
-											break;
-										}
-									}
-
-									// TODO SVS - docs apparently does not send downloader privileges from the VIEW_GROUP_PRIVILEGES service
-									if ( matchingRole == null )
-									{
-										matchingRole = XConversationRole.GROUP_MEMBER;
-									}
-
-									userInfo.MemberRole = matchingRole;
-									userInfo.ObjectType = XUserObject.TYPE;
-								}
-								else
-								{
-									// User is not found in social. Ideally this should not happen.
-									userInfo = new XUserInfo();
-									userInfo.Name = memberLoginIDName;
-									userInfo.ObjectType = XUserObject.TYPE;
-								}
-
-								retval.add( userInfo );
-							}
-							else if ( memberType.equals( "group" ) )
-							{
-								String			groupID = memberDataObject.get("dMemberID");
-								XGroupInfo		groupInfo;
-								XGroupObject	foundGroupObject =  XGroupsObjectManager.findGroupObjectByGroupID( groupID );
-
-								if ( foundGroupObject != null )
-								{
-									groupInfo = foundGroupObject.getInfo();
-									// groupInfo.MemberRole = memberType; VIEW_GROUP_PRIVILEGES does not work for groups
-									groupInfo.ObjectType = XGroupObject.TYPE;
-								}
-								else
-								{
-									groupInfo = new XGroupInfo();
-									groupInfo.ID = XObjectID.valueOf( groupID.substring( 2 ) );
-									groupInfo.ObjectType = XGroupObject.TYPE;
-								}
-
-								retval.add( groupInfo );
-							}
-						}
+						dataObjects = groupMembers.getRows();
+						privileges = privilegesLookup.join();
 					}
 					else
 					{
@@ -2118,11 +3151,183 @@ public final class XIdcUtils
 			{
 				response.close();
 			}
+
+			// not needed when the members could not be read; a lookup already running closes its own response
+
+			privilegesLookup.cancel();
+		}
+
+		if ( dataObjects == null )
+		{
+			return false;
+		}
+
+		int						chunkSize = Math.max( 1, XPropertiesManager.getInstance().getInt( GROUP_MEMBERS_CHUNK_SIZE_PROPERTY, DEFAULT_GROUP_MEMBERS_CHUNK_SIZE ) );
+
+		for ( int start = 0; start < dataObjects.size(); start += chunkSize )
+		{
+			List<XMemberInfo>	memberInfos;
+
+			try
+			{
+				memberInfos = toMemberInfos( dataObjects.subList( start, Math.min( start + chunkSize, dataObjects.size() ) ), privileges );
+			}
+			catch ( Throwable ex )
+			{
+				sLogger.error( "Exception in invoking {0} service", SERVICE_VIEW_GROUP_MEMBERS, ex );
+
+				throw new XRuntimeException( "waggle.server.integration.docs.idc.CouldNotViewGroupMembers", groupObject.getName(), groupObject.getID(), groupObject.getGroupID(), ex );
+			}
+
+			// failures of the consumer are the caller's own, they are not failures to view the members
+
+			chunkConsumer.accept( memberInfos );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Builds the member infos of VIEW_GROUP_MEMBERS rows.
+	 *
+	 * @param dataObjects The member rows.
+	 * @param privileges The role of each member keyed by login name.
+	 * @return The member infos, in row order.
+	 */
+	private static List<XMemberInfo> toMemberInfos( List<DataObject> dataObjects, Map<String, XConversationRole> privileges )
+	{
+		List<XMemberInfo>				retval = new ArrayList<>( dataObjects.size() );
+		Map<String, XUserObject>		memberUserObjects = new HashMap<>();
+		Map<String, XGroupObject>		memberGroupObjects = new HashMap<>();
+
+		resolveMemberObjects( dataObjects, memberUserObjects, memberGroupObjects );
+
+		for ( DataObject memberDataObject : dataObjects )
+		{
+			String memberLoginIDName = memberDataObject.get( "dMemberIDLoginName" );
+			// user or group
+			String memberType = memberDataObject.get( "dMemberType" );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Group Member MemberLoginIDName {0}, Member type {1}.", memberLoginIDName, memberType );
+			}
+
+			if ( memberType.equals( "user" ) )
+			{
+				XUserObject memberUserObject = memberUserObjects.get( memberLoginIDName );
+				XUserInfo	userInfo;
+
+				if ( memberUserObject != null )
+				{
+					userInfo = memberUserObject.getInfo();
+					XConversationRole matchingRole = privileges.get( memberLoginIDName );
+
+					if ( sLogger.isDebugEnabled() )
+					{
+						sLogger.debug( "Group Member Privilege Role {0} MemberLoginIDName {1}.", matchingRole, memberLoginIDName );
+					}
+
+					// TODO SVS - docs apparently does not send downloader privileges from the VIEW_GROUP_PRIVILEGES service
+					if ( matchingRole == null )
+					{
+						matchingRole = XConversationRole.GROUP_MEMBER;
+					}
+
+					userInfo.MemberRole = matchingRole;
+					userInfo.ObjectType = XUserObject.TYPE;
+				}
+				else
+				{
+					// User is not found in social. Ideally this should not happen.
+					userLoginNameChanged( memberLoginIDName );
+
+					userInfo = new XUserInfo();
+					userInfo.Name = memberLoginIDName;
+					userInfo.ObjectType = XUserObject.TYPE;
+				}
+
+				retval.add( userInfo );
+			}
+			else if ( memberType.equals( "group" ) )
+			{
+				String			groupID = memberDataObject.get("dMemberID");
+				XGroupInfo		groupInfo;
+				XGroupObject	foundGroupObject = memberGroupObjects.get( groupID );
+
+				if ( foundGroupObject != null )
+				{
+					groupInfo = foundGroupObject.getInfo();
+					// groupInfo.MemberRole = memberType; VIEW_GROUP_PRIVILEGES does not work for groups
+					groupInfo.ObjectType = XGroupObject.TYPE;
+				}
+				else
+				{
+					groupInfo = new XGroupInfo();
+					groupInfo.ID = XObjectID.valueOf( groupID.substring( 2 ) );
+					groupInfo.ObjectType = XGroupObject.TYPE;
+				}
+
+				retval.add( groupInfo );
+			}
 		}
 
 		return retval;
 	}
 
+	/**
+	 * Looks up the OSN users and groups of the VIEW_GROUP_MEMBERS rows. The login names and group IDs are collected
+	 * from all rows first, so a member is looked up once however many rows name it.
+	 *
+	 * @param dataObjects The member rows.
+	 * @param userObjects Receives the users found, keyed by login name.
+	 * @param groupObjects Receives the groups found, keyed by DoCS group ID.
+	 */
+	private static void resolveMemberObjects( List<DataObject> dataObjects, Map<String, XUserObject> userObjects, Map<String, XGroupObject> groupObjects )
+	{
+		Set<String>				loginNames = new HashSet<>();
+		Set<String>				groupIDs = new HashSet<>();
+
+		for ( DataObject memberDataObject : dataObjects )
+		{
+			String				memberType = memberDataObject.get( "dMemberType" );
+
+			if ( "user".equals( memberType ) )
+			{
+				loginNames.add( memberDataObject.get( "dMemberIDLoginName" ) );
+			}
+			else if ( "group".equals( memberType ) )
+			{
+				groupIDs.add( memberDataObject.get( "dMemberID" ) );
+			}
+		}
+
+		for ( String loginName : loginNames )
+		{
+			XUserObject			userObject = XUsersObjectManager.findUserObject( loginName );
+
+			if ( userObject != null )
+			{
+				userObjects.put( loginName, userObject );
+			}
+		}
+
+		for ( String groupID : groupIDs )
+		{
+			XGroupObject		groupObject = XGroupsObjectManager.findGroupObjectByGroupID( groupID );
+
+			if ( groupObject != null )
+			{
+				groupObjects.put( groupID, groupObject );
+			}
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Resolved {0} of {1} member users and {2} of {3} member groups.", userObjects.size(), loginNames.size(), groupObjects.size(), groupIDs.size() );
+		}
+	}
+
 	/**
 	 * View DoCS group members.
 	 *
@@ -2132,12 +3337,12 @@ public final class XIdcUtils
 	 * @param userObject The user object.
 	 * @param groupObject The group object.
 	 *
-	 * @return Group members privileges.
+	 * @return Group members privileges, the role of each member keyed by login name.
 	 */
-	private static List<DoCSGroupPrivilegeStruct> viewGroupPrivileges( XUserObject userObject, XGroupObject groupObject )
+	private static Map<String, XConversationRole> viewGroupPrivileges( XUserObject userObject, XGroupObject groupObject )
 	{
 		ServiceResponse 				response = null;
-		List<DoCSGroupPrivilegeStruct>	retval = null;
+		Map<String, XConversationRole>	retval = null;
 
 		try
 		{
@@ -2178,7 +3383,7 @@ public final class XIdcUtils
 					if ( groupAuthMembers != null )
 					{
 						List<DataObject> 	dataObjects = groupAuthMembers.getRows();
-						retval = new ArrayList<DoCSGroupPrivilegeStruct>( dataObjects.size() );
+						retval = new HashMap<>( ( dataObjects.size() * 4 / 3 ) + 1 );
 						for ( DataObject memberDataObject : dataObjects )
 						{
 							String userIDLoginName = memberDataObject.get( "dUserIDLoginName" );
@@ -2189,7 +3394,9 @@ public final class XIdcUtils
 								sLogger.debug( "Group Member Privilege UserLoginIDName {0}, RoleName {1}.", userIDLoginName, roleName );
 							}
 
-							retval.add( new DoCSGroupPrivilegeStruct( userIDLoginName, roleName ) );
+							// a member listed more than once keeps its first privilege
+
+							retval.putIfAbsent( userIDLoginName, getSocialGroupMemberRole( roleName ) );
 						}
 					}
 					else
@@ -2231,28 +3438,6 @@ public final class XIdcUtils
 		return retval;
 	}
 
-	private static class DoCSGroupPrivilegeStruct
-	{
-		private String fUserIDLoginName;
-		private XConversationRole fMemberRole;
-
-		private DoCSGroupPrivilegeStruct( String userIDLoginName, String memberRole )
-		{
-			fUserIDLoginName = userIDLoginName;
-			fMemberRole = getSocialGroupMemberRole( memberRole );
-		}
-
-		private String getUserIDLoginName()
-		{
-			return fUserIDLoginName;
-		}
-
-		private XConversationRole getMemberRole()
-		{
-			return fMemberRole;
-		}
-	}
-
 	/**
 	 * Delete a Group from DoCS.
 	 *
@@ -2305,6 +3490,10 @@ public final class XIdcUtils
 
 			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotDeleteGroup", groupID );
 
+			// the folders shared with the group are no longer accessible to its members
+
+			clearPermissionCache();
+
 			DataBinder responseBinder = response.getResponseAsBinder();
 
 			if ( ( responseBinder != null ) && ( responseBinder.getLocalData() != null ) )
@@ -2460,6 +3649,8 @@ public final class XIdcUtils
 
 			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotJoinGroup", userName, groupObject.getName(), groupObject.getID(), groupObject.getGroupID() );
 
+			userPermissionsChanged( userObject );
+
 			DataBinder 			responseBinder = response.getResponseAsBinder();
 
 			if ( ( responseBinder != null ) && ( responseBinder.getLocalData() != null ) )
@@ -2527,6 +3718,8 @@ public final class XIdcUtils
 
 			response = execute( idcClient, userContext, binder, "waggle.server.integration.docs.idc.CouldNotLeaveGroup", userName, groupObject.getName(), groupObject.getID(), groupObject.getGroupID() );
 
+			userPermissionsChanged( userObject );
+
 			DataBinder 			responseBinder = response.getResponseAsBinder();
 
 			if ( ( responseBinder != null ) && ( responseBinder.getLocalData() != null ) )
@@ -2570,13 +3763,104 @@ public final class XIdcUtils
 		return XString.join( memberIDs.toArray(), "," );
 	}
 
-	private static List<XGroupSyncStruct> performGroupMembersAction( XUserObject userObject,
-																	 XGroupObject groupObject,
+	/**
+	 * Performs a group members action. Large member sets are sent in chunks of
+	 * waggle.server.docsintegration.group.members.action.chunk.size members, at most
+	 * waggle.server.docsintegration.group.members.action.parallelism chunks in flight (the next chunk is sent as soon
+	 * as any finishes), and the action status of all chunks is merged. Each chunk is retried like any other request (see XIdcRetryPolicy); a chunk that still fails
+	 * fails the action, and chunks that were not sent yet are not sent.
+	 * The cached permissions of the members are discarded once the action is over, even if it failed part way.
+	 */
+	private static List<XGroupSyncStruct> performGroupMembersAction( final XUserObject userObject,
+																	 final XGroupObject groupObject,
 																	 Map<String, XMemberObject> members,
-																	 XConversationRole role,
-																	 XGroupSyncAction action,
-																	 String exceptionResourceID,
-																	 Object... exceptionResourceArgs )
+																	 final XConversationRole role,
+																	 final XGroupSyncAction action,
+																	 final String exceptionResourceID,
+																	 final Object... exceptionResourceArgs )
+	{
+		try
+		{
+			return sendGroupMembersAction( userObject, groupObject, members, role, action, exceptionResourceID, exceptionResourceArgs );
+		}
+		finally
+		{
+			if ( members != null )
+			{
+				memberPermissionsChanged( members.values() );
+			}
+		}
+	}
+
+	private static List<XGroupSyncStruct> sendGroupMembersAction( final XUserObject userObject,
+																  final XGroupObject groupObject,
+																  Map<String, XMemberObject> members,
+																  final XConversationRole role,
+																  final XGroupSyncAction action,
+																  final String exceptionResourceID,
+																  final Object... exceptionResourceArgs )
+	{
+		int							chunkSize = Math.max( 1, XPropertiesManager.getInstance().getInt( GROUP_MEMBERS_ACTION_CHUNK_SIZE_PROPERTY, DEFAULT_GROUP_MEMBERS_ACTION_CHUNK_SIZE ) );
+
+		if ( XCollections.isMapEmpty( members ) || ( members.size() <= chunkSize ) || !isMemberIDsAction( action ) )
+		{
+			return performGroupMembersActionChunk( userObject, groupObject, members, role, action, exceptionResourceID, exceptionResourceArgs );
+		}
+
+		List<Map<String, XMemberObject>>	chunks = new ArrayList<>();
+		Map<String, XMemberObject>			chunk = null;
+
+		for ( Map.Entry<String, XMemberObject> entry : members.entrySet() )
+		{
+			if ( ( chunk == null ) || ( chunk.size() >= chunkSize ) )
+			{
+				chunk = new LinkedHashMap<>();
+				chunks.add( chunk );
+			}
+
+			chunk.put( entry.getKey(), entry.getValue() );
+		}
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Sending {0} members for action {1} in {2} chunks.", members.size(), action, chunks.size() );
+		}
+
+		int							parallelism = Math.max( 1, XPropertiesManager.getInstance().getInt( GROUP_MEMBERS_ACTION_PARALLELISM_PROPERTY, DEFAULT_GROUP_MEMBERS_ACTION_PARALLELISM ) );
+		List<Supplier<List<XGroupSyncStruct>>>	tasks = new ArrayList<>( chunks.size() );
+		List<XGroupSyncStruct>		retval = new ArrayList<XGroupSyncStruct>( members.size() );
+
+		for ( final Map<String, XMemberObject> memberChunk : chunks )
+		{
+			tasks.add( () -> performGroupMembersActionChunk( userObject, groupObject, memberChunk, role, action, exceptionResourceID, exceptionResourceArgs ) );
+		}
+
+		// after a failed chunk, the chunks that have not started are not sent
+
+		for ( List<XGroupSyncStruct> chunkStatus : XIdcExecutor.forkAll( "IDC " + action, tasks, parallelism ) )
+		{
+			retval.addAll( chunkStatus );
+		}
+
+		return retval;
+	}
+
+	private static boolean isMemberIDsAction( XGroupSyncAction action )
+	{
+		return ( action.equals( XGroupSyncAction.ADD_GROUP_MEMBERS ) ) ||
+			   ( action.equals( XGroupSyncAction.REMOVE_GROUP_MEMBERS ) ) ||
+			   ( action.equals( XGroupSyncAction.GRANT_GROUP_PRIVILEGE ) ) ||
+			   ( action.equals( XGroupSyncAction.REVOKE_GROUP_PRIVILEGE ) ) ||
+			   ( action.equals( XGroupSyncAction.MODIFY_GROUP_PRIVILEGE ) );
+	}
+
+	private static List<XGroupSyncStruct> performGroupMembersActionChunk( XUserObject userObject,
+																		  XGroupObject groupObject,
+																		  Map<String, XMemberObject> members,
+																		  XConversationRole role,
+																		  XGroupSyncAction action,
+																		  String exceptionResourceID,
+																		  Object... exceptionResourceArgs )
 	{
 		if ( XCollections.isMapEmpty( members ) )
 		{
@@ -2605,11 +3889,7 @@ public final class XIdcUtils
 
 			binder.putLocal( "item", getIDCGroupID( groupObject ) );
 
-			if ( ( action.equals( XGroupSyncAction.ADD_GROUP_MEMBERS ) ) ||
-				 ( action.equals( XGroupSyncAction.REMOVE_GROUP_MEMBERS ) ) ||
-				 ( action.equals( XGroupSyncAction.GRANT_GROUP_PRIVILEGE ) ) ||
-				 ( action.equals( XGroupSyncAction.REVOKE_GROUP_PRIVILEGE ) ) ||
-				 ( action.equals( XGroupSyncAction.MODIFY_GROUP_PRIVILEGE ) ) )
+			if ( isMemberIDsAction( action ) )
 			{
 				binder.putLocal( "dMemberID", getMemberIDs( members.keySet() ) );
 			}
@@ -2894,6 +4174,12 @@ public final class XIdcUtils
 			{
 				XUserObject			memberObject = XUsersObjectManager.findUserObject( memberDetail );
 
+				if ( memberObject == null )
+				{
+					// the user was renamed or deleted
+					userLoginNameChanged( memberDetail );
+				}
+
 				if ( ( memberObject != null ) &&
 					 memberObject.equals( userObject ) &&
 					 !memberObject.equals( groupObject.getOwnerUserObject() ) &&
@@ -3100,30 +4386,94 @@ public final class XIdcUtils
 				memberID = memberObject.getName();
 			}
 
-			members.put( memberID, memberObject );
+			members.put( memberID, memberObject );
+		}
+
+		retval = performGroupMembersAction( userObject,
+											groupObject,
+											members,
+											GROUP_MANAGER,
+											XGroupSyncAction.REVOKE_GROUP_PRIVILEGE,
+											"waggle.server.integration.docs.idc.CouldNotRevokeGroupPrivilege",	// I18N
+											groupObject.getName(),
+											groupObject.getID(),
+											groupObject.getGroupID() );
+
+		return retval;
+	}
+
+	/**
+	 * Get the file version from content server using FLD_INFO IDC service.
+	 * Versions are cached per user and GUID, since FLD_INFO only answers for users who can see the document, until
+	 * they expire or {@link #contentFileVersionChanged(String)} is called.
+	 *
+	 * @param contentServerGUID 	The GUID of the document in Content Server.
+	 * @return 						The file version.
+	 */
+	public static String getContentFileVersion( final String contentServerGUID )
+	{
+		String						key = getFileVersionKey( XSessionManager.getUserObject(), contentServerGUID );
+
+		if ( key == null )
+		{
+			return loadContentFileVersion( contentServerGUID );
+		}
+
+		XIdcCache.Entry<String>		entry = sFileVersionCache.get( key );
+
+		if ( entry != null )
+		{
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "File version for GUID: {0} found in cache: {1}", contentServerGUID, entry.getValue() );
+			}
+
+			return entry.getValue();
 		}
 
-		retval = performGroupMembersAction( userObject,
-											groupObject,
-											members,
-											GROUP_MANAGER,
-											XGroupSyncAction.REVOKE_GROUP_PRIVILEGE,
-											"waggle.server.integration.docs.idc.CouldNotRevokeGroupPrivilege",	// I18N
-											groupObject.getName(),
-											groupObject.getID(),
-											groupObject.getGroupID() );
+		long						stamp = sFileVersionCache.getStamp();
+		String						retval = loadContentFileVersion( contentServerGUID );
+
+		// a document without file details is not cached, it may be about to get its first version
+
+		if ( retval != null )
+		{
+			sFileVersionCache.put( key, retval, stamp );
+		}
 
 		return retval;
 	}
 
 	/**
-	 * Get the file version from content server using FLD_INFO IDC service.
+	 * Discards the cached file version of a document. Must be called when a new version is uploaded.
 	 *
 	 * @param contentServerGUID 	The GUID of the document in Content Server.
-	 * @return 						The file version.
 	 */
-	public static String getContentFileVersion( final String contentServerGUID )
+	public static void contentFileVersionChanged( final String contentServerGUID )
+	{
+		sFileVersionCache.invalidateIf( key -> key.endsWith( '\n' + contentServerGUID ) );
+	}
+
+	/**
+	 * @return The file version cache key of a document for a user, or null if the version cannot be cached because
+	 *         there is no user.
+	 */
+	private static String getFileVersionKey( final XUserObject userObject, final String contentServerGUID )
+	{
+		return ( userObject != null ) ? userObject.getName() + '\n' + contentServerGUID : null;
+	}
 
+	/**
+	 * Get the statistics of the Content Server lookup caches, for monitoring.
+	 *
+	 * @return The cache statistics.
+	 */
+	public static List<XIdcCacheStatsStruct> getCacheStatistics()
+	{
+		return XIdcCache.getAllStatistics();
+	}
+
+	private static String loadContentFileVersion( final String contentServerGUID )
 	{
 		ServiceResponse 	response = null;
 		String				retVal = null;
@@ -3306,8 +4656,402 @@ public final class XIdcUtils
 		return retval;
 	}
 
+	/**
+	 * Get the role of a user on a folder. Roles are cached per user and folder for a short time.
+	 *
+	 * @param artifactID The folder GUID.
+	 * @param userObject The user to impersonate.
+	 * @return The resource info holding the role.
+	 */
 	public static XResourceInfo getFolderInfo( final String artifactID, final XUserObject userObject )
+	{
+		String		item = artifactID.startsWith( FOLDER_PREFIX ) ? artifactID : FOLDER_PREFIX + artifactID;
+
+		return getCachedResourceInfo( item, userObject, () -> loadFolderInfo( artifactID, userObject ) );
+	}
+
+	/**
+	 * Get the role of a user on a file. Roles are cached per user and file for a short time.
+	 *
+	 * @param artifactID The file GUID.
+	 * @param userObject The user to impersonate.
+	 * @return The resource info holding the role.
+	 */
+	public static XResourceInfo getFileInfo( final String artifactID, final XUserObject userObject )
+	{
+		String		item = artifactID.startsWith( ITEM_PREFIX ) ? artifactID : ITEM_PREFIX + artifactID;
+
+		return getCachedResourceInfo( item, userObject, () -> loadFileInfo( artifactID, userObject ) );
+	}
+
+	/**
+	 * Discards the cached roles of every user on a file or folder. Must be called when its sharing changes.
+	 *
+	 * @param artifactID The file or folder GUID, with or without its prefix.
+	 */
+	public static void artifactPermissionsChanged( final String artifactID )
+	{
+		final String	guid = stripArtifactPrefix( artifactID );
+
+		sPermissionCache.invalidateIf( key -> key.endsWith( '\n' + FOLDER_PREFIX + guid ) || key.endsWith( '\n' + ITEM_PREFIX + guid ) );
+	}
+
+	/**
+	 * Discards the cached roles, file versions, site access decisions, search result pages and site index of a user.
+	 * Must be called when the user's memberships change.
+	 *
+	 * @param userObject The user.
+	 */
+	public static void userPermissionsChanged( final XUserObject userObject )
+	{
+		if ( userObject != null )
+		{
+			usersPermissionsChanged( Collections.singleton( userObject.getName() ) );
+		}
+	}
+
+	/**
+	 * Discards the cached roles, file versions, site access decisions, search result pages and site indexes of many
+	 * users, with a single pass over each cache however many users there are.
+	 *
+	 * @param userNames The names of the users.
+	 */
+	private static void usersPermissionsChanged( final Set<String> userNames )
+	{
+		if ( userNames.isEmpty() )
+		{
+			return;
+		}
+
+		sPermissionCache.invalidateIf( key -> userNames.contains( getCacheKeyUserName( key ) ) );
+		sFileVersionCache.invalidateIf( key -> userNames.contains( getCacheKeyUserName( key ) ) );
+		sSitesAccessCache.invalidateIf( key -> userNames.contains( getCacheKeyUserName( key ) ) );
+		sSearchCache.invalidateIf( key -> userNames.contains( getCacheKeyUserName( key ) ) );
+
+		XIdcSiteIndex.invalidate( userNames );
+	}
+
+	/**
+	 * Get the user name the per-user cache keys start with.
+	 *
+	 * @param key The cache key, the user name and the rest separated by a new line.
+	 * @return The user name, or null if the key has none.
+	 */
+	static String getCacheKeyUserName( String key )
+	{
+		int		index = key.indexOf( '\n' );
+
+		return ( index >= 0 ) ? key.substring( 0, index ) : null;
+	}
+
+	/**
+	 * Discards every cached role, file version, site access decision and search result page.
+	 */
+	public static void clearPermissionCache()
+	{
+		sPermissionCache.invalidateAll();
+		sFileVersionCache.invalidateAll();
+		sSitesAccessCache.invalidateAll();
+		sSearchCache.invalidateAll();
+	}
+
+	/**
+	 * Resolves the role of a user on many files and folders, and the latest revision of the files, in one call.
+	 * Duplicate IDs are resolved once, cached answers are used, and the remaining artifacts are looked up with
+	 * FLD_INFO in parallel, with at most waggle.server.docsintegration.bulk.parallelism lookups in flight and the next
+	 * one starting as soon as any finishes. With n lookups the time taken is about n / bulk.parallelism lookups, not
+	 * the sum of all of them, and a slow lookup holds up only its own slot.
+	 *
+	 * @param artifactIDs The file and folder GUIDs. IDs without the fFolderGUID: or fFileGUID: prefix are taken as files.
+	 * @param userObject The user to impersonate.
+	 * @return The info of each artifact, keyed by the ID as given. Artifacts that could not be looked up are marked
+	 * 		   as not resolved.
+	 */
+	public static Map<String, XIdcArtifactInfoStruct> resolveArtifacts( final Collection<String> artifactIDs, final XUserObject userObject )
+	{
+		Map<String, String>						items = new LinkedHashMap<>();
+		Map<String, XIdcArtifactInfoStruct>		infos = new HashMap<>();
+		Set<String>								misses = new LinkedHashSet<>();
+
+		for ( String artifactID : artifactIDs )
+		{
+			if ( XString.isBlank( artifactID ) || items.containsKey( artifactID ) )
+			{
+				continue;
+			}
+
+			String					item = ( artifactID.startsWith( FOLDER_PREFIX ) || artifactID.startsWith( ITEM_PREFIX ) ) ? artifactID : ITEM_PREFIX + artifactID;
+
+			items.put( artifactID, item );
+
+			if ( infos.containsKey( item ) || misses.contains( item ) )
+			{
+				continue;
+			}
+
+			XIdcArtifactInfoStruct	cached = getCachedArtifactInfo( item, userObject );
+
+			if ( cached != null )
+			{
+				infos.put( item, cached );
+			}
+			else
+			{
+				misses.add( item );
+			}
+		}
+
+		// at most bulk.parallelism lookups in flight, the next one starting as soon as any finishes
+
+		List<String>							lookupItems = new ArrayList<>( misses );
+		List<Supplier<XIdcArtifactInfoStruct>>	lookups = new ArrayList<>( lookupItems.size() );
+		int										parallelism = Math.max( 1, XPropertiesManager.getInstance().getInt( BULK_PARALLELISM_PROPERTY, DEFAULT_BULK_PARALLELISM ) );
+
+		for ( final String item : lookupItems )
+		{
+			lookups.add( () -> lookupArtifactInfo( item, userObject ) );
+		}
+
+		List<XIdcArtifactInfoStruct>			lookedUp = XIdcExecutor.forkAll( "IDC resolveArtifacts", lookups, parallelism );
+
+		for ( int i = 0; i < lookupItems.size(); i++ )
+		{
+			infos.put( lookupItems.get( i ), lookedUp.get( i ) );
+		}
+
+		Map<String, XIdcArtifactInfoStruct>		retval = new LinkedHashMap<>();
+
+		for ( Map.Entry<String, String> entry : items.entrySet() )
+		{
+			String					artifactID = entry.getKey();
+			XIdcArtifactInfoStruct	info = infos.get( entry.getValue() );
+
+			retval.put( artifactID, new XIdcArtifactInfoStruct( artifactID, info.isFolder(), info.getRole(), info.getRevisionID(), info.isResolved() ) );
+		}
+
+		return retval;
+	}
+
+	private static XIdcArtifactInfoStruct lookupArtifactInfo( final String item, final XUserObject userObject )
+	{
+		try
+		{
+			return loadArtifactInfo( item, userObject );
+		}
+		catch ( RuntimeException ex )
+		{
+			sLogger.warning( "Could not resolve Content Server artifact {0}.", item, ex );
+
+			return new XIdcArtifactInfoStruct( item, item.startsWith( FOLDER_PREFIX ), null, null, false );
+		}
+	}
+
+	private static XIdcArtifactInfoStruct getCachedArtifactInfo( final String item, final XUserObject userObject )
+	{
+		XUserObject							currentUserObject = ( userObject != null ) ? userObject : XSessionManager.getUserObject();
+
+		if ( currentUserObject == null )
+		{
+			return null;
+		}
+
+		XIdcCache.Entry<XConversationRole>	role = sPermissionCache.get( currentUserObject.getName() + '\n' + item );
+
+		if ( role == null )
+		{
+			return null;
+		}
+
+		if ( item.startsWith( FOLDER_PREFIX ) )
+		{
+			return new XIdcArtifactInfoStruct( item, true, role.getValue(), null, true );
+		}
+
+		XIdcCache.Entry<String>				revision = sFileVersionCache.get( getFileVersionKey( currentUserObject, item.substring( ITEM_PREFIX.length() ) ) );
+
+		return ( revision == null ) ? null : new XIdcArtifactInfoStruct( item, false, role.getValue(), revision.getValue(), true );
+	}
+
+	/**
+	 * Looks up the role of the user on a file or folder, and the latest revision of a file, with one FLD_INFO call.
+	 * Both answers are put in their caches.
+	 */
+	private static XIdcArtifactInfoStruct loadArtifactInfo( final String item, final XUserObject userObject )
+	{
+		boolean					folder = item.startsWith( FOLDER_PREFIX );
+		String					exceptionResourceId = folder ? "waggle.server.integration.docs.idc.CouldNotGetFolderInfo" : "waggle.server.integration.docs.idc.CouldNotGetFileInfo";
+		XUserObject				currentUserObject = ( userObject != null ) ? userObject : XSessionManager.getUserObject();
+		long					permissionStamp = sPermissionCache.getStamp();
+		long					versionStamp = sFileVersionCache.getStamp();
+		ServiceResponse 		response = null;
+		XConversationRole		role;
+		String					revisionID = null;
+
+		try
+		{
+			IdcClient 			idcClient = getIdcClient();
+			IdcContext 			userContext = getIdcContext();
+			DataBinder 			binder = getDataBinder( idcClient, SERVICE_FLD_INFO, currentUserObject );
+
+			binder.putLocal( "item", item );
+
+			if ( sLogger.isDebugEnabled() )
+			{
+				sLogger.debug( "Binder object in the IDC request for FLD_INFO: {0}", binder.toString() );
+			}
+
+			response = execute( idcClient, userContext, binder, exceptionResourceId );
+
+			DataBinder 			responseBinder = response.getResponseAsBinder();
+
+			role = XAccessControlUtil.mapContentRoleToConvRole( responseBinder.getLocal( "dRoleName" ) );
+
+			DataResultSet		fileInfo = folder ? null : responseBinder.getResultSet( "FileInfo" );
+
+			if ( ( fileInfo != null ) && XCollections.isNotEmpty( fileInfo.getRows() ) )
+			{
+				revisionID = fileInfo.getRows().get( 0 ).get( FLD_INFO_FILE_VERSION_PARAM );
+			}
+		}
+		catch ( Throwable ex )
+		{
+			sLogger.error( "Exception in invoking {0} service", SERVICE_FLD_INFO, ex );
+
+			throw new XRuntimeException( exceptionResourceId, ex );
+		}
+		finally
+		{
+			if ( response != null )
+			{
+				response.close();
+			}
+		}
+
+		if ( currentUserObject != null )
+		{
+			boolean		noAccess = ( role == null ) || ( role == XConversationRole.NONE );
+
+			sPermissionCache.put( currentUserObject.getName() + '\n' + item, role, permissionStamp,
+								  noAccess ? XPropertiesManager.getInstance().getLong( PERMISSION_NEGATIVE_TTL_PROPERTY, DEFAULT_PERMISSION_NEGATIVE_TTL ) : sPermissionCache.getTTL() );
+		}
+
+		if ( ( revisionID != null ) && ( currentUserObject != null ) )
+		{
+			sFileVersionCache.put( getFileVersionKey( currentUserObject, item.substring( ITEM_PREFIX.length() ) ), revisionID, versionStamp );
+		}
+
+		return new XIdcArtifactInfoStruct( item, folder, role, revisionID, true );
+	}
 
+	/**
+	 * Discards the cached permissions of the members added to or removed from a group, once for the whole action.
+	 * A Group member changes the access of each of its exploded users; those are collected on the IDC executor
+	 * rather than on the request thread. Members that could not be found are null and skipped.
+	 */
+	private static void memberPermissionsChanged( final Collection<XMemberObject> memberObjects )
+	{
+		Set<String>					userNames = new HashSet<>();
+		final List<XObjectID>		groupIDs = new ArrayList<>();
+
+		for ( XMemberObject memberObject : memberObjects )
+		{
+			if ( memberObject instanceof XUserObject )
+			{
+				userNames.add( memberObject.getName() );
+			}
+			else if ( memberObject instanceof XGroupObject )
+			{
+				groupIDs.add( memberObject.getID() );
+			}
+		}
+
+		usersPermissionsChanged( userNames );
+
+		if ( !groupIDs.isEmpty() )
+		{
+			XIdcExecutor.submit( "IDC group members permissions changed", () ->
+			{
+				Set<String>			groupUserNames = new HashSet<>();
+
+				for ( XObjectID groupID : groupIDs )
+				{
+					XGroupObject	groupObject = XGroupObjectManager.findGroupObject( groupID );
+
+					if ( groupObject == null )
+					{
+						continue;
+					}
+
+					for ( XMemberObject groupMemberObject : groupObject.getGroupMembersObject().getAllMemberObjects().keySet() )
+					{
+						if ( groupMemberObject instanceof XUserObject )
+						{
+							groupUserNames.add( groupMemberObject.getName() );
+						}
+					}
+				}
+
+				usersPermissionsChanged( groupUserNames );
+
+				return null;
+			} );
+		}
+	}
+
+	private static XResourceInfo getCachedResourceInfo( final String item, final XUserObject userObject, final Supplier<XResourceInfo> loader )
+	{
+		XUserObject					currentUserObject = ( userObject != null ) ? userObject : XSessionManager.getUserObject();
+
+		if ( currentUserObject == null )
+		{
+			return loader.get();
+		}
+
+		String						key = currentUserObject.getName() + '\n' + item;
+		XIdcCache.Entry<XConversationRole>	entry = sPermissionCache.get( key );
+
+		if ( entry != null )
+		{
+			XResourceInfo	retval = new XResourceInfo();
+
+			retval.setRole( entry.getValue() );
+
+			return retval;
+		}
+
+		long						stamp = sPermissionCache.getStamp();
+		XResourceInfo				retval = loader.get();
+		XConversationRole			role = retval.getRole();
+
+		// no access is cached for a shorter time, so a new share shows up quickly even without an invalidation
+
+		if ( ( role == null ) || ( role == XConversationRole.NONE ) )
+		{
+			sPermissionCache.put( key, role, stamp, XPropertiesManager.getInstance().getLong( PERMISSION_NEGATIVE_TTL_PROPERTY, DEFAULT_PERMISSION_NEGATIVE_TTL ) );
+		}
+		else
+		{
+			sPermissionCache.put( key, role, stamp );
+		}
+
+		return retval;
+	}
+
+	private static String stripArtifactPrefix( final String artifactID )
+	{
+		if ( artifactID.startsWith( FOLDER_PREFIX ) )
+		{
+			return artifactID.substring( FOLDER_PREFIX.length() );
+		}
+		else if ( artifactID.startsWith( ITEM_PREFIX ) )
+		{
+			return artifactID.substring( ITEM_PREFIX.length() );
+		}
+
+		return artifactID;
+	}
+
+	private static XResourceInfo loadFolderInfo( final String artifactID, final XUserObject userObject )
 	{
 		ServiceResponse 		response = null;
 		XResourceInfo 			retval = null;
@@ -3358,8 +5102,7 @@ public final class XIdcUtils
 		return retval;
 	}
 
-	public static XResourceInfo getFileInfo( final String artifactID, final XUserObject userObject )
-
+	private static XResourceInfo loadFileInfo( final String artifactID, final XUserObject userObject )
 	{
 		ServiceResponse 		response = null;
 		XResourceInfo 			retval = null;
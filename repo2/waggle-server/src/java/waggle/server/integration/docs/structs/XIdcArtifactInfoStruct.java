@@ -0,0 +1,72 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs.structs;
+
+import waggle.common.modules.conversation.enums.XConversationRole;
+
+/**
+ * The role of a user on a Content Server file or folder, and the latest revision of a file.
+ */
+public final class XIdcArtifactInfoStruct
+{
+	private final String				fArtifactID;
+	private final boolean				fFolder;
+	private final XConversationRole		fRole;
+	private final String				fRevisionID;
+	private final boolean				fResolved;
+
+	public XIdcArtifactInfoStruct( String artifactID, boolean folder, XConversationRole role, String revisionID, boolean resolved )
+	{
+		fArtifactID = artifactID;
+		fFolder = folder;
+		fRole = role;
+		fRevisionID = revisionID;
+		fResolved = resolved;
+	}
+
+	/**
+	 * @return The artifact ID as requested.
+	 */
+	public String getArtifactID()
+	{
+		return fArtifactID;
+	}
+
+	public boolean isFolder()
+	{
+		return fFolder;
+	}
+
+	public XConversationRole getRole()
+	{
+		return fRole;
+	}
+
+	/**
+	 * @return The latest active revision ID, or null for folders.
+	 */
+	public String getRevisionID()
+	{
+		return fRevisionID;
+	}
+
+	/**
+	 * @return False if Content Server could not be asked about the artifact.
+	 */
+	public boolean isResolved()
+	{
+		return fResolved;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "XIdcArtifactInfoStruct{" +
+			   "ArtifactID=" + fArtifactID +
+			   ", Folder=" + fFolder +
+			   ", Role=" + fRole +
+			   ", RevisionID=" + fRevisionID +
+			   ", Resolved=" + fResolved +
+			   '}';
+	}
+}
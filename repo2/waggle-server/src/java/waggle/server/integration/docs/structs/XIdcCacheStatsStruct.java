@@ -0,0 +1,102 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs.structs;
+
+/**
+ * Snapshot of the statistics of one Content Server lookup cache.
+ */
+public final class XIdcCacheStatsStruct
+{
+	private final String	fName;
+	private final int		fSize;
+	private final int		fMaxSize;
+	private final long		fHits;
+	private final long		fMisses;
+	private final long		fEvictions;
+	private final long		fExpirations;
+	private final long		fInvalidations;
+
+	public XIdcCacheStatsStruct( String name,
+								 int size,
+								 int maxSize,
+								 long hits,
+								 long misses,
+								 long evictions,
+								 long expirations,
+								 long invalidations )
+	{
+		fName = name;
+		fSize = size;
+		fMaxSize = maxSize;
+		fHits = hits;
+		fMisses = misses;
+		fEvictions = evictions;
+		fExpirations = expirations;
+		fInvalidations = invalidations;
+	}
+
+	public String getName()
+	{
+		return fName;
+	}
+
+	public int getSize()
+	{
+		return fSize;
+	}
+
+	public int getMaxSize()
+	{
+		return fMaxSize;
+	}
+
+	public long getHits()
+	{
+		return fHits;
+	}
+
+	public long getMisses()
+	{
+		return fMisses;
+	}
+
+	/**
+	 * @return The share of lookups answered from the cache, between 0 and 1.
+	 */
+	public double getHitRatio()
+	{
+		long	lookups = fHits + fMisses;
+
+		return ( lookups == 0 ) ? 0 : (double) fHits / lookups;
+	}
+
+	public long getEvictions()
+	{
+		return fEvictions;
+	}
+
+	public long getExpirations()
+	{
+		return fExpirations;
+	}
+
+	public long getInvalidations()
+	{
+		return fInvalidations;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "XIdcCacheStatsStruct{" +
+			   "Name=" + fName +
+			   ", Size=" + fSize +
+			   ", MaxSize=" + fMaxSize +
+			   ", Hits=" + fHits +
+			   ", Misses=" + fMisses +
+			   ", Evictions=" + fEvictions +
+			   ", Expirations=" + fExpirations +
+			   ", Invalidations=" + fInvalidations +
+			   '}';
+	}
+}
@@ -0,0 +1,119 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs.structs;
+
+/**
+ * Snapshot of the IDC connection pool statistics.
+ */
+public final class XIdcConnectionPoolStatsStruct
+{
+	private final int		fMaxTotal;
+	private final int		fMaxPerRoute;
+	private final int		fClients;
+	private final int		fConnectionsPerClient;
+	private final int		fInFlight;
+	private final int		fPeakInFlight;
+	private final long		fTotalRequests;
+	private final long		fValidations;
+	private final long		fValidationFailures;
+	private final long		fClosedClients;
+	private final long		fIdleEvictions;
+
+	public XIdcConnectionPoolStatsStruct( int maxTotal,
+										  int maxPerRoute,
+										  int clients,
+										  int connectionsPerClient,
+										  int inFlight,
+										  int peakInFlight,
+										  long totalRequests,
+										  long validations,
+										  long validationFailures,
+										  long closedClients,
+										  long idleEvictions )
+	{
+		fMaxTotal = maxTotal;
+		fMaxPerRoute = maxPerRoute;
+		fClients = clients;
+		fConnectionsPerClient = connectionsPerClient;
+		fInFlight = inFlight;
+		fPeakInFlight = peakInFlight;
+		fTotalRequests = totalRequests;
+		fValidations = validations;
+		fValidationFailures = validationFailures;
+		fClosedClients = closedClients;
+		fIdleEvictions = idleEvictions;
+	}
+
+	public int getMaxTotal()
+	{
+		return fMaxTotal;
+	}
+
+	public int getMaxPerRoute()
+	{
+		return fMaxPerRoute;
+	}
+
+	public int getClients()
+	{
+		return fClients;
+	}
+
+	public int getConnectionsPerClient()
+	{
+		return fConnectionsPerClient;
+	}
+
+	public int getInFlight()
+	{
+		return fInFlight;
+	}
+
+	public int getPeakInFlight()
+	{
+		return fPeakInFlight;
+	}
+
+	public long getTotalRequests()
+	{
+		return fTotalRequests;
+	}
+
+	public long getValidations()
+	{
+		return fValidations;
+	}
+
+	public long getValidationFailures()
+	{
+		return fValidationFailures;
+	}
+
+	public long getClosedClients()
+	{
+		return fClosedClients;
+	}
+
+	public long getIdleEvictions()
+	{
+		return fIdleEvictions;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "XIdcConnectionPoolStatsStruct{" +
+			   "MaxTotal=" + fMaxTotal +
+			   ", MaxPerRoute=" + fMaxPerRoute +
+			   ", Clients=" + fClients +
+			   ", ConnectionsPerClient=" + fConnectionsPerClient +
+			   ", InFlight=" + fInFlight +
+			   ", PeakInFlight=" + fPeakInFlight +
+			   ", TotalRequests=" + fTotalRequests +
+			   ", Validations=" + fValidations +
+			   ", ValidationFailures=" + fValidationFailures +
+			   ", ClosedClients=" + fClosedClients +
+			   ", IdleEvictions=" + fIdleEvictions +
+			   '}';
+	}
+}
@@ -0,0 +1,147 @@
+/* Copyright (c) 2016, 2020, Oracle and/or its affiliates. All rights reserved. */
+
+package waggle.server.integration.docs.structs;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the request metrics of one IDC service.
+ */
+public final class XIdcServiceMetricsStruct
+{
+	private final String				fServiceName;
+	private final long					fRequests;
+	private final long					fTotalLatency;
+	private final long					fMaxLatency;
+	private final long					fLatencyP50;
+	private final long					fLatencyP95;
+	private final long					fLatencyP99;
+	private final long					fRequestBytes;
+	private final long					fResponseBytes;
+	private final long					fRetries;
+	private final Map<String, Long>		fStatusCodes;
+	private final Map<String, Long>		fExceptions;
+
+	public XIdcServiceMetricsStruct( String serviceName,
+									 long requests,
+									 long totalLatency,
+									 long maxLatency,
+									 long latencyP50,
+									 long latencyP95,
+									 long latencyP99,
+									 long requestBytes,
+									 long responseBytes,
+									 long retries,
+									 Map<String, Long> statusCodes,
+									 Map<String, Long> exceptions )
+	{
+		fServiceName = serviceName;
+		fRequests = requests;
+		fTotalLatency = totalLatency;
+		fMaxLatency = maxLatency;
+		fLatencyP50 = latencyP50;
+		fLatencyP95 = latencyP95;
+		fLatencyP99 = latencyP99;
+		fRequestBytes = requestBytes;
+		fResponseBytes = responseBytes;
+		fRetries = retries;
+		fStatusCodes = statusCodes;
+		fExceptions = exceptions;
+	}
+
+	public String getServiceName()
+	{
+		return fServiceName;
+	}
+
+	public long getRequests()
+	{
+		return fRequests;
+	}
+
+	/**
+	 * @return The sum of all request latencies, in milliseconds.
+	 */
+	public long getTotalLatency()
+	{
+		return fTotalLatency;
+	}
+
+	public long getMaxLatency()
+	{
+		return fMaxLatency;
+	}
+
+	public long getAverageLatency()
+	{
+		return ( fRequests == 0 ) ? 0 : fTotalLatency / fRequests;
+	}
+
+	public long getLatencyP50()
+	{
+		return fLatencyP50;
+	}
+
+	public long getLatencyP95()
+	{
+		return fLatencyP95;
+	}
+
+	public long getLatencyP99()
+	{
+		return fLatencyP99;
+	}
+
+	public long getRequestBytes()
+	{
+		return fRequestBytes;
+	}
+
+	public long getResponseBytes()
+	{
+		return fResponseBytes;
+	}
+
+	/**
+	 * @return The number of times a request to the service was retried.
+	 */
+	public long getRetries()
+	{
+		return fRetries;
+	}
+
+	/**
+	 * @return The number of responses per Content Server StatusCode.
+	 */
+	public Map<String, Long> getStatusCodes()
+	{
+		return fStatusCodes;
+	}
+
+	/**
+	 * @return The number of failed requests per exception type.
+	 */
+	public Map<String, Long> getExceptions()
+	{
+		return fExceptions;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "XIdcServiceMetricsStruct{" +
+			   "ServiceName=" + fServiceName +
+			   ", Requests=" + fRequests +
+			   ", AverageLatency=" + getAverageLatency() +
+			   ", MaxLatency=" + fMaxLatency +
+			   ", P50=" + fLatencyP50 +
+			   ", P95=" + fLatencyP95 +
+			   ", P99=" + fLatencyP99 +
+			   ", RequestBytes=" + fRequestBytes +
+			   ", ResponseBytes=" + fResponseBytes +
+			   ", Retries=" + fRetries +
+			   ", StatusCodes=" + fStatusCodes +
+			   ", Exceptions=" + fExceptions +
+			   '}';
+	}
+}
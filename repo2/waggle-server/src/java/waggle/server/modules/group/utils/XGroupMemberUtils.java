@@ -2,13 +2,16 @@
 
 package waggle.server.modules.group.utils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import waggle.common.modules.conversation.enums.XConversationRole;
 import waggle.common.modules.group.enums.XGroupType;
@@ -29,6 +32,7 @@ import waggle.server.activity.XActivityManager;
 import waggle.server.executor.XExecutorManager;
 import waggle.server.executor.XExecutorRunnable;
 import waggle.server.groupsync.XGroupSyncUtils;
+import waggle.server.integration.docs.XIdcExecutor;
 import waggle.server.integration.docs.XIdcUtils;
 import waggle.server.modules.conversation.database.conversation.XConversationObject;
 import waggle.server.modules.conversation.database.conversation.XConversationObjectManager;
@@ -966,22 +970,29 @@ public final class XGroupMemberUtils
 						createdGroupObject = createBacklogObject.getGroupObject();
 					}
 
-					for ( XGroupSyncBacklogObject backlogObject : addedBacklogObjects )
+					if ( XIdcExecutor.isVirtualThreadModeEnabled() )
 					{
-						if ( ( createdGroupObject == null ) || ( !backlogObject.getGroupObject().getID().equals( createdGroupObject.getID() ) ) )
+						syncBacklogObjectsConcurrently( createdGroupObject, addedBacklogObjects, modifiedBacklogObjects, removedBacklogObjects );
+					}
+					else
+					{
+						for ( XGroupSyncBacklogObject backlogObject : addedBacklogObjects )
 						{
-							XGroupIDCSyncUtils.groupMembershipAdded( backlogObject );
+							if ( ( createdGroupObject == null ) || ( !backlogObject.getGroupObject().getID().equals( createdGroupObject.getID() ) ) )
+							{
+								XGroupIDCSyncUtils.groupMembershipAdded( backlogObject );
+							}
 						}
-					}
 
-					for ( XGroupSyncBacklogObject backlogObject : modifiedBacklogObjects )
-					{
-						XGroupIDCSyncUtils.groupMembershipModified( backlogObject );
-					}
+						for ( XGroupSyncBacklogObject backlogObject : modifiedBacklogObjects )
+						{
+							XGroupIDCSyncUtils.groupMembershipModified( backlogObject );
+						}
 
-					for ( XGroupSyncBacklogObject backlogObject : removedBacklogObjects )
-					{
-						XGroupIDCSyncUtils.groupMembershipRemoved( backlogObject );
+						for ( XGroupSyncBacklogObject backlogObject : removedBacklogObjects )
+						{
+							XGroupIDCSyncUtils.groupMembershipRemoved( backlogObject );
+						}
 					}
 
 					if ( sLogger.isInfoEnabled() )
@@ -995,6 +1006,90 @@ public final class XGroupMemberUtils
 		}
 	}
 
+	/**
+	 * Syncs the backlog objects to DoCS on the IDC executor. The operations of one Group keep their order
+	 * (add, modify, remove) while different Groups are synced concurrently. Each task reloads its backlog object,
+	 * as it runs in a transaction of its own.
+	 */
+	private static void syncBacklogObjectsConcurrently(
+		XGroupObject						createdGroupObject,
+		Set<XGroupSyncBacklogObject>		addedBacklogObjects,
+		Set<XGroupSyncBacklogObject>		modifiedBacklogObjects,
+		Set<XGroupSyncBacklogObject>		removedBacklogObjects )
+	{
+		Map<XObjectID, List<Runnable>>	groupTasks = new LinkedHashMap<>();
+
+		for ( XGroupSyncBacklogObject backlogObject : addedBacklogObjects )
+		{
+			if ( ( createdGroupObject == null ) || ( !backlogObject.getGroupObject().getID().equals( createdGroupObject.getID() ) ) )
+			{
+				addGroupSyncTask( groupTasks, backlogObject, XGroupIDCSyncUtils::groupMembershipAdded );
+			}
+		}
+
+		for ( XGroupSyncBacklogObject backlogObject : modifiedBacklogObjects )
+		{
+			addGroupSyncTask( groupTasks, backlogObject, XGroupIDCSyncUtils::groupMembershipModified );
+		}
+
+		for ( XGroupSyncBacklogObject backlogObject : removedBacklogObjects )
+		{
+			addGroupSyncTask( groupTasks, backlogObject, XGroupIDCSyncUtils::groupMembershipRemoved );
+		}
+
+		XIdcExecutor.invokeAll( "Group Change Members DoCS Sync", getSequentialTasks( groupTasks ) );
+	}
+
+	private static void addGroupSyncTask( Map<XObjectID, List<Runnable>> groupTasks, XGroupSyncBacklogObject backlogObject, final Consumer<XGroupSyncBacklogObject> sync )
+	{
+		XObjectID		groupID = backlogObject.getGroupObject().getID();
+		final XObjectID	backlogID = backlogObject.getID();
+		List<Runnable>	tasks = groupTasks.get( groupID );
+
+		if ( tasks == null )
+		{
+			tasks = new ArrayList<>();
+			groupTasks.put( groupID, tasks );
+		}
+
+		// the task runs in another transaction, so only the ID of the backlog object is carried over
+
+		tasks.add( () ->
+		{
+			XGroupSyncBacklogObject		taskBacklogObject = XGroupSyncBacklogObjectManager.findGroupSyncBacklogObject( backlogID );
+
+			if ( taskBacklogObject == null )
+			{
+				if ( sLogger.isDebugEnabled() )
+				{
+					sLogger.debug( "Group sync backlog object {0} no longer exists. Skipping DoCS sync.", backlogID );
+				}
+
+				return;
+			}
+
+			sync.accept( taskBacklogObject );
+		} );
+	}
+
+	private static List<Runnable> getSequentialTasks( Map<XObjectID, List<Runnable>> groupTasks )
+	{
+		List<Runnable>	retval = new ArrayList<>( groupTasks.size() );
+
+		for ( final List<Runnable> tasks : groupTasks.values() )
+		{
+			retval.add( () ->
+			{
+				for ( Runnable task : tasks )
+				{
+					task.run();
+				}
+			} );
+		}
+
+		return retval;
+	}
+
 	private static void logDocsSync(
 		Map<XGroupObject,Map<XMemberObject,XConversationRole>> addedMembers,
 		Map<XGroupObject,Map<XMemberObject,XConversationRole>> modifiedMembers,
@@ -1255,6 +1350,11 @@ public final class XGroupMemberUtils
 
 		XUserObject			currentUserObject = XSessionManager.getUserObject();
 
+		// in virtual thread mode the DoCS calls are made concurrently once the backlog objects are committed
+
+		boolean							syncConcurrently = XIdcExecutor.isVirtualThreadModeEnabled();
+		Map<XObjectID, List<Runnable>>	groupTasks = new LinkedHashMap<>();
+
 		for ( XGroupObject groupObject : groupObjects )
 		{
 			XUserObject 	groupOwner = groupObject.getOwnerUserObject();
@@ -1285,7 +1385,14 @@ public final class XGroupMemberUtils
 																														   true );
 				XEventsManager.fire( XGroupModuleServerEvents.class ).notifyGroupBacklogObjectCreated( altBacklogObject );
 
-				XGroupIDCSyncUtils.groupMembershipAdded( altBacklogObject );
+				if ( syncConcurrently )
+				{
+					addGroupSyncTask( groupTasks, altBacklogObject, XGroupIDCSyncUtils::groupMembershipAdded );
+				}
+				else
+				{
+					XGroupIDCSyncUtils.groupMembershipAdded( altBacklogObject );
+				}
 			}
 
 			XGroupSyncBacklogObject	backlogObject = XGroupSyncBacklogObjectManager.createGroupSyncBacklogObject( XSessionManager.getEffectiveUserObject(),
@@ -1301,7 +1408,28 @@ public final class XGroupMemberUtils
 
 			XEventsManager.fire( XGroupModuleServerEvents.class ).notifyGroupBacklogObjectCreated( backlogObject );
 
-			XGroupIDCSyncUtils.groupMembershipRemoved( backlogObject );
+			if ( syncConcurrently )
+			{
+				addGroupSyncTask( groupTasks, backlogObject, XGroupIDCSyncUtils::groupMembershipRemoved );
+			}
+			else
+			{
+				XGroupIDCSyncUtils.groupMembershipRemoved( backlogObject );
+			}
+		}
+
+		if ( !groupTasks.isEmpty() )
+		{
+			final List<Runnable>	tasks = getSequentialTasks( groupTasks );
+
+			XExecutorManager.executeOnCommit( new XExecutorRunnable( "User Deprovisioned DoCS Sync" )
+			{
+				@Override
+				public void execute()
+				{
+					XIdcExecutor.invokeAll( "User Deprovisioned DoCS Sync", tasks );
+				}
+			} );
 		}
 	}
 
@@ -1368,7 +1496,7 @@ public final class XGroupMemberUtils
 	 *
 	 * @param groupObject Group object
 	 */
-	public static void forceSyncGroupMembers ( XGroupObject groupObject )
+	public static void forceSyncGroupMembers ( final XGroupObject groupObject )
 	{
 		if ( groupObject == null )
 		{
@@ -1383,6 +1511,11 @@ public final class XGroupMemberUtils
 		Map<XMemberObject, XConversationRole>		socialGroupMembers = groupObject.getGroupMembersObject().getMemberObjects();
 		Map<Long, GroupMembersWithConvRole>			socialMemberWithRoles = new HashMap<>();
 		Set<String>									membersToRemoveFromDocs = new HashSet<>();
+		List<Runnable>								docsTasks = new ArrayList<>( 2 );
+
+		// the DoCS calls may run in transactions of their own, so they reload the Group and its members by ID
+
+		final XObjectID								groupID = groupObject.getID();
 
 		if ( sLogger.isDebugEnabled() )
 		{
@@ -1401,17 +1534,14 @@ public final class XGroupMemberUtils
 			}
 		}
 
-		// get all group members from docs
-		List<XMemberInfo>			docsGroupMembers = XIdcUtils.viewGroupMembers( groupObject.getOwnerUserObject(), groupObject );
+		// get all group members from docs, a chunk at a time, so a large group is never held in memory at once
+		final int[]					docsMemberCount = { 0 };
 
-		if ( sLogger.isDebugEnabled() )
+		XIdcUtils.viewGroupMembers( groupObject.getOwnerUserObject(), groupObject, docsGroupMembers ->
 		{
-			sLogger.debug( "Total docs members found for group: {0} :: {1}", groupObject.getName(), XCollections.isNotEmpty( docsGroupMembers ) ? docsGroupMembers.size() : 0 );
-		}
+			docsMemberCount[ 0 ] += docsGroupMembers.size();
 
-		// Add members into Docs which are available in Social but missing in Docs
-		if ( XCollections.isNotEmpty( docsGroupMembers ) )
-		{
+			// Add members into Docs which are available in Social but missing in Docs
 			for ( XMemberInfo docsmemberInfo : docsGroupMembers )
 			{
 				// docsmemberInfo.ID can be null if user is available in docs but not in social. Remove such users from docs too. see bug 31378318
@@ -1434,16 +1564,21 @@ public final class XGroupMemberUtils
 					}
 				}
 			}
+		} );
+
+		if ( sLogger.isDebugEnabled() )
+		{
+			sLogger.debug( "Total docs members found for group: {0} :: {1}", groupObject.getName(), docsMemberCount[ 0 ] );
 		}
 
 		if( XCollections.isMapNotEmpty( socialMemberWithRoles ) )
 		{
-			Map<XMemberObject, XConversationRole>		addedMembersToDocs = new HashMap<>();
+			final Map<XObjectID, XConversationRole>	addedMembersToDocs = new HashMap<>();
 			for( Map.Entry<Long, GroupMembersWithConvRole> memberObjectXConversationRoleEntry : socialMemberWithRoles.entrySet() )
 			{
 				GroupMembersWithConvRole	groupMembersWithConvRole = memberObjectXConversationRoleEntry.getValue();
 
-				addedMembersToDocs.put( groupMembersWithConvRole.getMemberObject(), groupMembersWithConvRole.getConversationRole() );
+				addedMembersToDocs.put( groupMembersWithConvRole.getMemberObject().getID(), groupMembersWithConvRole.getConversationRole() );
 			}
 
 			if( sLogger.isDebugEnabled() )
@@ -1453,7 +1588,28 @@ public final class XGroupMemberUtils
 
 			if( XCollections.isMapNotEmpty( addedMembersToDocs ) )
 			{
-				XIdcUtils.addGroupMembers( groupObject.getOwnerUserObject(), groupObject, addedMembersToDocs );
+				docsTasks.add( () ->
+				{
+					XGroupObject							taskGroupObject = XGroupObjectManager.findGroupObject( groupID );
+					Map<XMemberObject, XConversationRole>	taskMembersToDocs = new HashMap<>();
+
+					if ( taskGroupObject == null )
+					{
+						return;
+					}
+
+					for ( Map.Entry<XObjectID, XConversationRole> entry : addedMembersToDocs.entrySet() )
+					{
+						XMemberObject		memberObject = XMemberObjectManager.getMemberObject( entry.getKey() );
+
+						if ( memberObject != null )
+						{
+							taskMembersToDocs.put( memberObject, entry.getValue() );
+						}
+					}
+
+					XIdcUtils.addGroupMembers( taskGroupObject.getOwnerUserObject(), taskGroupObject, taskMembersToDocs );
+				} );
 			}
 		}
 
@@ -1464,7 +1620,29 @@ public final class XGroupMemberUtils
 
 		if ( XCollections.isNotEmpty( membersToRemoveFromDocs ) )
 		{
-			XIdcUtils.removeGroupMembersWithName( groupObject.getOwnerUserObject(), groupObject, membersToRemoveFromDocs );
+			docsTasks.add( () ->
+			{
+				XGroupObject		taskGroupObject = XGroupObjectManager.findGroupObject( groupID );
+
+				if ( taskGroupObject != null )
+				{
+					XIdcUtils.removeGroupMembersWithName( taskGroupObject.getOwnerUserObject(), taskGroupObject, membersToRemoveFromDocs );
+				}
+			} );
+		}
+
+		// additions and removals are independent of each other, so in virtual thread mode they are sent concurrently
+
+		if ( XIdcExecutor.isVirtualThreadModeEnabled() && ( docsTasks.size() > 1 ) )
+		{
+			XIdcExecutor.invokeAll( "Force Sync Group Members", docsTasks );
+		}
+		else
+		{
+			for ( Runnable docsTask : docsTasks )
+			{
+				docsTask.run();
+			}
 		}
 	}
 